@@ -0,0 +1,131 @@
+import reversi.bench.Engine;
+
+/**
+ * The engine as the benchmarks of reversi.bench see it (see Engine), on the positions of one phase of Positions.
+ */
+public class BenchmarkEngine implements Engine
+{
+    private static final int SEARCH_DEPTH = 6;
+    private static final int SEARCH_MEGABYTES = 4;
+
+    private final Board[] boards;
+    private final int[] colours;
+    private final int[] firstSquares;
+    private final PatternEvaluator patternEvaluator = new PatternEvaluator();
+
+    /* the table is emptied before every search, so that no search is helped by the ones before it. The positions of
+     * the endgame are searched as well, rather than solved, so that the phases can be compared. */
+    private final TranspositionTable table =
+            new TranspositionTable(SEARCH_MEGABYTES, TranspositionTable.ReplacementPolicy.DEPTH_PREFERRED);
+    private final Player[] players;
+    private final Player[] instrumentedPlayers;
+    private final Player[] principalVariationPlayers;
+
+    /**
+     * @param phase "opening", "midgame" or "endgame".
+     */
+    public BenchmarkEngine(String phase)
+    {
+        String[] moveLists = switch (phase) {
+            case "opening" -> Positions.OPENING;
+            case "midgame" -> Positions.MIDGAME;
+            case "endgame" -> Positions.ENDGAME;
+            default -> throw new IllegalArgumentException("Unknown phase: " + phase);
+        };
+        this.boards = Positions.boards(moveLists);
+        this.colours = new int[boards.length];
+        this.firstSquares = new int[boards.length];
+        this.players = new Player[boards.length];
+        this.instrumentedPlayers = new Player[boards.length];
+        this.principalVariationPlayers = new Player[boards.length];
+        SearchStatistics statistics = new SearchStatistics();
+        for (int i = 0; i < boards.length; ++i) {
+            colours[i] = boards[i].getPlayerToMove();
+            firstSquares[i] = Long.numberOfTrailingZeros(boards[i].legalMoves(colours[i]));
+            players[i] = searcher(colours[i]);
+            instrumentedPlayers[i] = searcher(colours[i]);
+            instrumentedPlayers[i].setStatistics(statistics);
+            principalVariationPlayers[i] = searcher(colours[i]);
+            principalVariationPlayers[i].setPrincipalVariationSearch(true);
+        }
+    }
+
+    private Player searcher(int colour) {
+        return new Player(SEARCH_DEPTH, colour, table);
+    }
+
+    @Override
+    public int size() {
+        return boards.length;
+    }
+
+    @Override
+    public long legalMoves(int index) {
+        return boards[index].legalMoves(colours[index]);
+    }
+
+    @Override
+    public boolean canPlay(int index) {
+        return boards[index].canPlay(colours[index]);
+    }
+
+    @Override
+    public int getChildren(int index) {
+        return boards[index].getChildren(colours[index]).size();
+    }
+
+    @Override
+    public int evaluate(int index) {
+        return boards[index].evaluate();
+    }
+
+    @Override
+    public int patternEvaluate(int index) {
+        return patternEvaluator.evaluate(boards[index]);
+    }
+
+    @Override
+    public int canonical(int index) {
+        return Symmetry.canonical(boards[index], colours[index]);
+    }
+
+    @Override
+    public int copyAndMakeMove(int index) {
+        Board child = new Board(boards[index]);
+        child.makeMove(firstSquares[index] / 8, firstSquares[index] % 8, colours[index]);
+        return child.getScore(colours[index]);
+    }
+
+    @Override
+    public long playAndUndoMoves(int index) {
+        Board board = boards[index];
+        long result = 0;
+        for (long moves = board.legalMoves(colours[index]); moves != 0; moves &= moves - 1) {
+            board.playMove(Long.numberOfTrailingZeros(moves), colours[index]);
+            result += board.getZobristKey();
+            board.undoMove();
+        }
+        return result;
+    }
+
+    @Override
+    public long minimax(int index) {
+        return search(players[index], index);
+    }
+
+    @Override
+    public long minimaxStatistics(int index) {
+        return search(instrumentedPlayers[index], index);
+    }
+
+    @Override
+    public long principalVariation(int index) {
+        return search(principalVariationPlayers[index], index);
+    }
+
+    private long search(Player player, int index) {
+        table.clear();
+        player.minimax(boards[index]);
+        return player.getNodeCount();
+    }
+}
@@ -0,0 +1,91 @@
+package reversi.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the board on the positions of every phase of Positions: move generation, evaluation and making moves.
+ * One operation is one call on one position, and the positions of the phase are used in turn. With -prof gc, JMH
+ * also reports the bytes allocated per operation and the allocation rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(2)
+@State(Scope.Thread)
+public class BoardBenchmark
+{
+    @Param({"opening", "midgame", "endgame"})
+    public String phase;
+
+    private Engine engine;
+    private int size;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        engine = Engine.create(phase);
+        size = engine.size();
+    }
+
+    /**
+     * @return The index of the next position, in turn.
+     */
+    private int next() {
+        int current = index;
+        index = current + 1 == size ? 0 : current + 1;
+        return current;
+    }
+
+    @Benchmark
+    public long legalMoves() {
+        return engine.legalMoves(next());
+    }
+
+    @Benchmark
+    public boolean canPlay() {
+        return engine.canPlay(next());
+    }
+
+    @Benchmark
+    public int getChildren() {
+        return engine.getChildren(next());
+    }
+
+    @Benchmark
+    public int evaluate() {
+        return engine.evaluate(next());
+    }
+
+    @Benchmark
+    public int patternEvaluate() {
+        return engine.patternEvaluate(next());
+    }
+
+    @Benchmark
+    public int canonical() {
+        return engine.canonical(next());
+    }
+
+    @Benchmark
+    public int copyAndMakeMove() {
+        return engine.copyAndMakeMove(next());
+    }
+
+    @Benchmark
+    public long playAndUndoMoves() {
+        return engine.playAndUndoMoves(next());
+    }
+}
@@ -0,0 +1,68 @@
+package reversi.bench;
+
+/**
+ * What the benchmarks measure, on the positions of one phase of Positions. <br>
+ * The engine is written in the default package, which JMH does not accept benchmarks in, and which code in a package
+ * cannot refer to. The benchmarks therefore reach it through this interface, implemented by BenchmarkEngine in the
+ * default package. It has a single implementation, so the JIT compiler inlines every call through it and the
+ * measurements are those of the engine itself. <br>
+ * Every method works on the position with the given index, from 0 to size - 1, and returns a value that depends on
+ * the work done, for the benchmark to sink.
+ */
+public interface Engine
+{
+    /**
+     * @param phase "opening", "midgame" or "endgame".
+     * @return The engine, with a board (and a player for each kind of search) for every position of the phase.
+     */
+    static Engine create(String phase) {
+        try {
+            return (Engine) Class.forName("BenchmarkEngine").getDeclaredConstructor(String.class).newInstance(phase);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("The engine is not on the class path", e);
+        }
+    }
+
+    /**
+     * @return The number of positions of the phase.
+     */
+    int size();
+
+    long legalMoves(int index);
+
+    boolean canPlay(int index);
+
+    int getChildren(int index);
+
+    int evaluate(int index);
+
+    int patternEvaluate(int index);
+
+    int canonical(int index);
+
+    /**
+     * Copies the board and plays its first legal move on the copy.
+     */
+    int copyAndMakeMove(int index);
+
+    /**
+     * Plays every legal move on the board itself, taking each back before the next.
+     */
+    long playAndUndoMoves(int index);
+
+    /**
+     * Searches the position to a fixed depth with minimax, from an empty transposition table.
+     * @return The number of nodes visited.
+     */
+    long minimax(int index);
+
+    /**
+     * minimax, counted by SearchStatistics, to measure what counting costs.
+     */
+    long minimaxStatistics(int index);
+
+    /**
+     * minimax, with the principal variation search.
+     */
+    long principalVariation(int index);
+}
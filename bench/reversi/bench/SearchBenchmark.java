@@ -0,0 +1,89 @@
+package reversi.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the search on the positions of every phase of Positions, each searched to depth 6 from an empty
+ * transposition table (the positions of the endgame are searched too, rather than solved, so that the phases can be
+ * compared). Reports the searches per second, and the nodes visited per second as the secondary result "nodes".
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SearchBenchmark
+{
+    @Param({"opening", "midgame", "endgame"})
+    public String phase;
+
+    private Engine engine;
+    private int size;
+    private int index;
+
+    /**
+     * The nodes visited by the searches of an iteration, which JMH reports per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Nodes
+    {
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            nodes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        engine = Engine.create(phase);
+        size = engine.size();
+    }
+
+    /**
+     * @return The index of the next position, in turn.
+     */
+    private int next() {
+        int current = index;
+        index = current + 1 == size ? 0 : current + 1;
+        return current;
+    }
+
+    @Benchmark
+    public long minimax(Nodes counter) {
+        long nodes = engine.minimax(next());
+        counter.nodes += nodes;
+        return nodes;
+    }
+
+    @Benchmark
+    public long minimaxStatistics(Nodes counter) {
+        long nodes = engine.minimaxStatistics(next());
+        counter.nodes += nodes;
+        return nodes;
+    }
+
+    @Benchmark
+    public long principalVariation(Nodes counter) {
+        long nodes = engine.principalVariation(next());
+        counter.nodes += nodes;
+        return nodes;
+    }
+}
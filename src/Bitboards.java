@@ -0,0 +1,187 @@
+/**
+ * Static helpers for working with boards stored as 64-bit masks, one bit per square. <br>
+ * The square at (row, col) is mapped to bit (row * 8 + col), so bit 0 is A1, bit 7 is H1 and bit 63 is H8.
+ */
+public final class Bitboards
+{
+    /** Every square except the ones in column A (used to stop shifts from wrapping around to the previous row). */
+    static final long NOT_A_FILE = 0xfefefefefefefefeL;
+    /** Every square except the ones in column H (used to stop shifts from wrapping around to the next row). */
+    static final long NOT_H_FILE = 0x7f7f7f7f7f7f7f7fL;
+
+    /** Squares that can be walked through horizontally without wrapping (columns B to G). */
+    static final long HORIZONTAL_INNER = 0x7e7e7e7e7e7e7e7eL;
+    /** Squares that can be walked through diagonally without wrapping (columns B to G, rows 2 to 7). */
+    static final long DIAGONAL_INNER = 0x007e7e7e7e7e7e00L;
+
+    private static final long EDGE_COLUMNS = 0x8181818181818181L;
+    private static final long EDGE_ROWS = 0xff000000000000ffL;
+    private static final long EDGES = EDGE_COLUMNS | EDGE_ROWS;
+
+    // the masks of every row, column, diagonal and anti-diagonal of the board
+    private static final long[] ROW_LINES = new long[8];
+    private static final long[] COLUMN_LINES = new long[8];
+    private static final long[] DIAGONAL_LINES = new long[15];
+    private static final long[] ANTI_DIAGONAL_LINES = new long[15];
+
+    static {
+        for (int row = 0; row < 8; ++row) {
+            for (int col = 0; col < 8; ++col) {
+                long bit = 1L << square(row, col);
+                ROW_LINES[row] |= bit;
+                COLUMN_LINES[col] |= bit;
+                DIAGONAL_LINES[row - col + 7] |= bit;
+                ANTI_DIAGONAL_LINES[row + col] |= bit;
+            }
+        }
+    }
+
+    private Bitboards() {
+    }
+
+    /**
+     * @param row The row of the square.
+     * @param col The column of the square.
+     * @return The index of the bit that represents the square.
+     */
+    public static int square(int row, int col) {
+        return row * 8 + col;
+    }
+
+    /**
+     * Generates every legal move for the player whose disks are marked on the first mask. A move is legal if it is on an
+     * empty square and flanks at least one line of opponent disks.
+     * @param player The disks of the player making the move.
+     * @param opponent The disks of their opponent.
+     * @return A mask with a bit set on every square the player is allowed to play on.
+     */
+    public static long legalMoves(long player, long opponent) {
+        long empty = ~(player | opponent);
+        long moves = movesLeft(player, opponent & HORIZONTAL_INNER, 1)
+                | movesRight(player, opponent & HORIZONTAL_INNER, 1)
+                | movesLeft(player, opponent, 8)
+                | movesRight(player, opponent, 8)
+                | movesLeft(player, opponent & DIAGONAL_INNER, 7)
+                | movesRight(player, opponent & DIAGONAL_INNER, 7)
+                | movesLeft(player, opponent & DIAGONAL_INNER, 9)
+                | movesRight(player, opponent & DIAGONAL_INNER, 9);
+        return moves & empty;
+    }
+
+    /**
+     * Calculates the opponent disks that are flipped when the player places a disk on the given square. The square is not
+     * checked for emptiness, that is left to the caller.
+     * @param square The index of the square the disk is placed on.
+     * @param player The disks of the player making the move.
+     * @param opponent The disks of their opponent.
+     * @return A mask of the disks to be flipped, 0 if the move does not flip anything (and is therefore not legal).
+     */
+    public static long flips(int square, long player, long opponent) {
+        long move = 1L << square;
+        return flipsLeft(move, player, opponent & HORIZONTAL_INNER, 1)
+                | flipsRight(move, player, opponent & HORIZONTAL_INNER, 1)
+                | flipsLeft(move, player, opponent, 8)
+                | flipsRight(move, player, opponent, 8)
+                | flipsLeft(move, player, opponent & DIAGONAL_INNER, 7)
+                | flipsRight(move, player, opponent & DIAGONAL_INNER, 7)
+                | flipsLeft(move, player, opponent & DIAGONAL_INNER, 9)
+                | flipsRight(move, player, opponent & DIAGONAL_INNER, 9);
+    }
+
+    /**
+     * @param disks A set of squares.
+     * @return Every square next to one of the given squares, in any of the eight directions.
+     */
+    public static long neighbours(long disks) {
+        long horizontal = ((disks << 1) & NOT_A_FILE) | ((disks >>> 1) & NOT_H_FILE);
+        long row = disks | horizontal;
+        return horizontal | (row << 8) | (row >>> 8);
+    }
+
+    /**
+     * Finds disks that can never be flipped again, whatever is played from now on. A disk is stable if, along each of
+     * the four lines through it, it cannot be flanked: the line is full, the disk is at the edge of the board, or its
+     * neighbour on that line is a stable disk of the same colour. Stability is spread from the corners until nothing
+     * changes. Not every stable disk is found, but every disk found is stable.
+     * @param disks The disks of one player.
+     * @param occupied Every disk on the board, of both players.
+     * @return The mask of the disks found to be stable.
+     */
+    public static long stableDisks(long disks, long occupied) {
+        long fullRows = fullLines(occupied, ROW_LINES) | EDGE_COLUMNS;
+        long fullColumns = fullLines(occupied, COLUMN_LINES) | EDGE_ROWS;
+        long fullDiagonals = fullLines(occupied, DIAGONAL_LINES) | EDGES;
+        long fullAntiDiagonals = fullLines(occupied, ANTI_DIAGONAL_LINES) | EDGES;
+
+        long stable = 0;
+        while (true) {
+            long horizontal = fullRows | ((stable << 1) & NOT_A_FILE) | ((stable >>> 1) & NOT_H_FILE);
+            long vertical = fullColumns | (stable << 8) | (stable >>> 8);
+            long diagonal = fullDiagonals | ((stable << 9) & NOT_A_FILE) | ((stable >>> 9) & NOT_H_FILE);
+            long antiDiagonal = fullAntiDiagonals | ((stable << 7) & NOT_H_FILE) | ((stable >>> 7) & NOT_A_FILE);
+            long spread = disks & horizontal & vertical & diagonal & antiDiagonal;
+            if (spread == stable) {
+                return stable;
+            }
+            stable = spread;
+        }
+    }
+
+    /**
+     * @return The union of the given lines that are completely occupied.
+     */
+    private static long fullLines(long occupied, long[] lines) {
+        long full = 0;
+        for (long line : lines) {
+            if ((occupied & line) == line) {
+                full |= line;
+            }
+        }
+        return full;
+    }
+
+    /* The helpers below walk one direction at a time. A line of opponent disks is at most 6 squares long, so the
+     * flood fill is unrolled to that length. The opponent mask passed in has already been trimmed so that no shift
+     * can carry a run of disks across the edge of the board. */
+
+    private static long movesLeft(long player, long mask, int shift) {
+        long run = (player << shift) & mask;
+        run |= (run << shift) & mask;
+        run |= (run << shift) & mask;
+        run |= (run << shift) & mask;
+        run |= (run << shift) & mask;
+        run |= (run << shift) & mask;
+        return run << shift;
+    }
+
+    private static long movesRight(long player, long mask, int shift) {
+        long run = (player >>> shift) & mask;
+        run |= (run >>> shift) & mask;
+        run |= (run >>> shift) & mask;
+        run |= (run >>> shift) & mask;
+        run |= (run >>> shift) & mask;
+        run |= (run >>> shift) & mask;
+        return run >>> shift;
+    }
+
+    private static long flipsLeft(long move, long player, long mask, int shift) {
+        long run = (move << shift) & mask;
+        run |= (run << shift) & mask;
+        run |= (run << shift) & mask;
+        run |= (run << shift) & mask;
+        run |= (run << shift) & mask;
+        run |= (run << shift) & mask;
+        // the run only counts if it is closed off by one of the player's disks
+        return ((run << shift) & player) != 0 ? run : 0;
+    }
+
+    private static long flipsRight(long move, long player, long mask, int shift) {
+        long run = (move >>> shift) & mask;
+        run |= (run >>> shift) & mask;
+        run |= (run >>> shift) & mask;
+        run |= (run >>> shift) & mask;
+        run |= (run >>> shift) & mask;
+        run |= (run >>> shift) & mask;
+        return ((run >>> shift) & player) != 0 ? run : 0;
+    }
+}
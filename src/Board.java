@@ -1,6 +1,5 @@
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Objects;
+import java.util.SplittableRandom;
 
 public class Board
 {
@@ -10,30 +9,109 @@ public class Board
     private static final int ROWS = 8;
     private static final int COLUMNS = 8;
 
-    private final int[][] gameBoard;
+    /* masks of the squares that the heuristic function treats specially, built once from the index helpers below so
+     * that evaluate can score every square of a kind with a single bit count */
+    private static final long CORNER_MASK = squaresMatching(0);
+    private static final long EDGE_MASK = squaresMatching(1);
+    private static final long DANGER_MASK = squaresMatching(2);
+
+    /* the weights of the heuristic function, read once (see EvaluationWeights). Kept in constants, so that the JIT
+     * compiler treats them as it would numbers written into the code. */
+    private static final EvaluationWeights WEIGHTS = EvaluationWeights.fromProperty();
+    private static final int CORNER_WEIGHT = WEIGHTS.get(EvaluationWeights.CORNER);
+    private static final int DANGER_WEIGHT = WEIGHTS.get(EvaluationWeights.DANGER);
+    private static final int EDGE_WEIGHT = WEIGHTS.get(EvaluationWeights.EDGE);
+    private static final int PIECE_WEIGHT = WEIGHTS.get(EvaluationWeights.PIECE);
+    private static final int PASS_WEIGHT = WEIGHTS.get(EvaluationWeights.PASS);
+
+    /* what a white disk on each square adds to the heuristic function (a black disk takes the same away), following
+     * the weights of evaluate. The sum over the disks on the board is kept up to date as disks are placed and flipped. */
+    private static final int[] SQUARE_WEIGHTS = new int[ROWS * COLUMNS];
+
+    static {
+        for (int square = 0; square < ROWS * COLUMNS; ++square) {
+            long bit = 1L << square;
+            SQUARE_WEIGHTS[square] = ((CORNER_MASK & bit) != 0 ? CORNER_WEIGHT : 0)
+                    + ((EDGE_MASK & bit) != 0 ? EDGE_WEIGHT : 0) - ((DANGER_MASK & bit) != 0 ? DANGER_WEIGHT : 0)
+                    + PIECE_WEIGHT;
+        }
+    }
+
+    // the disks of each colour, one bit per square (see Bitboards for the square numbering)
+    private long whiteDisks;
+    private long blackDisks;
+
+    /* random keys for Zobrist hashing: the key of a position is the xor of the key of every disk on it, so it can be
+     * updated with a couple of xors whenever a disk is placed or flipped. A fixed seed keeps the keys (and anything
+     * stored under them) the same from one run to the next. */
+    private static final long[] WHITE_KEYS = new long[ROWS * COLUMNS];
+    private static final long[] BLACK_KEYS = new long[ROWS * COLUMNS];
+    private static final long BLACK_TO_MOVE_KEY;
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5eed_2e7e_25L);
+        for (int square = 0; square < ROWS * COLUMNS; ++square) {
+            WHITE_KEYS[square] = random.nextLong();
+            BLACK_KEYS[square] = random.nextLong();
+        }
+        BLACK_TO_MOVE_KEY = random.nextLong();
+    }
+
+    // the maximum number of moves that can be taken back with undoMove (a game never lasts more than 60 moves)
+    private static final int MAX_HISTORY = 64;
 
     private int lastPlayer;
     private int whiteScore;
     private int blackScore;
 
-    private Move lastMove;
+    // the Zobrist key of the disks on the board, maintained incrementally as moves are made
+    private long zobristKey;
+
+    // the part of the heuristic function that depends on where the disks are, maintained incrementally as moves are made
+    private int positionalScore;
+
+    /* the legal moves of each colour for the current disks, worked out the first time they are asked for (by
+     * legalMoves, canPlay, isTerminal, getChildren or evaluate) and kept until a disk is placed or flipped. movesKnown
+     * says which of the two are up to date, as a combination of the flags below. */
+    private static final int WHITE_MOVES_KNOWN = 1;
+    private static final int BLACK_MOVES_KNOWN = 2;
+    private int movesKnown;
+    private long whiteMoves;
+    private long blackMoves;
+
+    // the square of the last move made (see Bitboards for the square numbering), -1 if no move has been made yet
+    private int lastSquare;
+
+    /* the undo records of the moves made through playMove, kept as parallel primitive arrays so that making and taking
+     * back a move allocates nothing. They are only created the first time playMove is called. */
+    private long[] flippedHistory;
+    private long[] keyHistory;
+    private int[] positionalScoreHistory;
+    private int[] squareHistory;
+    private int[] lastSquareHistory;
+    private int[] lastPlayerHistory;
+    private int historySize;
 
 	public Board() {
-        this.gameBoard = new int[ROWS][COLUMNS];
-        this.lastMove = new Move();
+        this.lastSquare = -1;
         this.lastPlayer = WHITE;    // as black plays first
         initialiseBoard();
+        this.zobristKey = computeZobristKey();
+        this.positionalScore = computePositionalScore();
         this.whiteScore = 2;
         this.blackScore = 2;
     }
 
     public Board(Board board) {
-        this.gameBoard = new int[ROWS][COLUMNS];
-        this.lastMove = new Move(board.lastMove);
+        this.lastSquare = board.lastSquare;
         this.lastPlayer = board.lastPlayer;
-        for (int row = 0; row < ROWS; ++row) {
-            System.arraycopy(board.gameBoard[row], 0, this.gameBoard[row], 0, COLUMNS);
-        }
+        this.whiteDisks = board.whiteDisks;
+        this.blackDisks = board.blackDisks;
+        this.zobristKey = board.zobristKey;
+        this.positionalScore = board.positionalScore;
+        this.movesKnown = board.movesKnown;
+        this.whiteMoves = board.whiteMoves;
+        this.blackMoves = board.blackMoves;
         this.whiteScore = board.whiteScore;
         this.blackScore = board.blackScore;
     }
@@ -43,46 +121,28 @@ public class Board
      * the centre 4, which (cols in letters, rows in numbers) will consist of white pieces on d4 & e5 and black on d5 & e4.
      */
     private void initialiseBoard() {
-        int row;
-        for (row = 0; row < 3; ++row) {
-            for (int col = 0; col < COLUMNS; ++col) {
-                this.gameBoard[row][col] = EMPTY;
-            }
-        }
-
-        // separate for, for the 2 middle rows (3 and 4)
-        for (row = 3; row < 5; ++row) {
-            int col;
-
-            // updating the first 3 columns
-            for (col = 0; col < 3; ++col) {
-                this.gameBoard[row][col] = EMPTY;
-            }
-
-            // updating [row][3]
-            if (col==row) {
-                this.gameBoard[row][col++] = WHITE;
-            } else {
-                this.gameBoard[row][col++] = BLACK;
-            }
-
-            // updating [row][4]
-            if (col==row) {
-                this.gameBoard[row][col] = WHITE;
-            } else {
-                this.gameBoard[row][col] = BLACK;
-            }
+        this.whiteDisks = bit(3, 3) | bit(4, 4);
+        this.blackDisks = bit(3, 4) | bit(4, 3);
+    }
 
-            // updating the 3 remaining columns
-            for (++col; col < COLUMNS; ++col) {
-                this.gameBoard[row][col] = EMPTY;
-            }
-        }
-        for (; row < ROWS; ++row) {
-            for (int col = 0; col < COLUMNS; ++col) {
-                this.gameBoard[row][col] = EMPTY;
-            }
+    /**
+     * @return The colour of the disk at the given square, Board.EMPTY if there is none.
+     */
+    private int colourAt(int row, int col) {
+        long square = bit(row, col);
+        if ((whiteDisks & square) != 0) {
+            return WHITE;
+        } else if ((blackDisks & square) != 0) {
+            return BLACK;
         }
+        return EMPTY;
+    }
+
+    /**
+     * @return The mask with only the bit of the given square set.
+     */
+    private static long bit(int row, int col) {
+        return 1L << Bitboards.square(row, col);
     }
 	
 	public void print() {
@@ -93,7 +153,7 @@ public class Board
             System.out.print("| ");
             System.out.print((row + 1) + " | ");
             for (int col = 0; col < COLUMNS; col++) {
-                switch (this.gameBoard[row][col]) {
+                switch (colourAt(row, col)) {
                     case WHITE -> System.out.print("W ");
                     case BLACK -> System.out.print("B ");
                     case EMPTY -> System.out.print("_ ");
@@ -115,13 +175,31 @@ public class Board
      * @return True if the player can play, false if not.
      */
     public boolean canPlay(int playerColour) {
-        if (playerColour == WHITE) {
-            return whiteScore > 0 && !getChildren(playerColour).isEmpty();
-        } else if (playerColour == BLACK) {
-            return blackScore > 0 && !getChildren(playerColour).isEmpty();
-        } else {
+        if (playerColour != WHITE && playerColour != BLACK) {
             return false;
         }
+        return legalMoves(playerColour) != 0;
+    }
+
+    /**
+     * The moves are worked out once per position and colour, and kept until the next move is made or taken back, so
+     * asking again is free. As asking may store them, a board must not be read from several threads at once.
+     * @param playerColour The colour of the player making the move.
+     * @return A mask with a bit set on every square the player can play on (see Bitboards for the square numbering).
+     */
+    public long legalMoves(int playerColour) {
+        if (playerColour == WHITE) {
+            if ((movesKnown & WHITE_MOVES_KNOWN) == 0) {
+                whiteMoves = Bitboards.legalMoves(whiteDisks, blackDisks);
+                movesKnown |= WHITE_MOVES_KNOWN;
+            }
+            return whiteMoves;
+        }
+        if ((movesKnown & BLACK_MOVES_KNOWN) == 0) {
+            blackMoves = Bitboards.legalMoves(blackDisks, whiteDisks);
+            movesKnown |= BLACK_MOVES_KNOWN;
+        }
+        return blackMoves;
     }
 
     /**
@@ -131,30 +209,54 @@ public class Board
      */
 	public ArrayList<Board> getChildren(int playerColour) {
         ArrayList<Board> children = new ArrayList<>();
-        for (int row = 0; row < ROWS; ++row) {
-            for (int col = 0; col < COLUMNS; ++col) {
-                if (isValidMove(row, col, playerColour)) {
-                    Board child = new Board(this);
-                    child.makeMove(row, col, playerColour);
-                    children.add(child);
-                }
-            }
+        // walking the set bits from the lowest up keeps the children in the same row-major order as before
+        for (long moves = legalMoves(playerColour); moves != 0; moves &= moves - 1) {
+            int square = Long.numberOfTrailingZeros(moves);
+            Board child = new Board(this);
+            child.makeMove(square / COLUMNS, square % COLUMNS, playerColour);
+            children.add(child);
         }
         return children;
     }
 
     /**
      * The heuristic function. Takes multiple scenarios into consideration, including corner squares, squares at the
-     * edges of the board, squares that are considered slightly more dangerous, etc.
+     * edges of the board, squares that are considered slightly more dangerous, etc., weighted as EvaluationWeights
+     * says. <br>
+     * Everything it needs is kept up to date as moves are made, or cached until the next one (see legalMoves), so it
+     * costs a couple of move generations at most, and none if the legal moves are already known.
      * @return The result of the heuristic function
      */
 	public int evaluate () {
+        return evaluate(canPlay(WHITE), canPlay(BLACK), whiteScore, blackScore, positionalScore);
+    }
+
+    /**
+     * Works out the heuristic function without anything kept up to date or cached, to check evaluate against.
+     * @return The result of the heuristic function, which should always be the same as that of evaluate.
+     */
+    int evaluateFromScratch() {
+        boolean whiteCanPlay = whiteScore > 0 && Bitboards.legalMoves(whiteDisks, blackDisks) != 0;
+        boolean blackCanPlay = blackScore > 0 && Bitboards.legalMoves(blackDisks, whiteDisks) != 0;
+        return evaluate(whiteCanPlay, blackCanPlay, whiteScore, blackScore, computePositionalScore());
+    }
+
+    /**
+     * The heuristic function of any position, from what it is made of (see PositionBatch, which evaluates positions
+     * without a Board).
+     * @param whiteCanPlay Whether the white player can play
+     * @param blackCanPlay Whether the black player can play
+     * @param whiteScore The number of white disks.
+     * @param blackScore The number of black disks.
+     * @param positionalScore The weighted corner, danger, edge and piece scores (see positionalScore).
+     * @return The result of the heuristic function
+     */
+    static int evaluate(boolean whiteCanPlay, boolean blackCanPlay, int whiteScore, int blackScore,
+                        int positionalScore) {
         int evaluation = 0; // will mark the final result of the heuristic function
-        boolean whiteCanPlay = canPlay(WHITE);
-        boolean blackCanPlay = canPlay(BLACK);
 
         // if this play leads to the game ending
-        if (isTerminal(whiteCanPlay, blackCanPlay)) {
+        if (whiteScore == 0 || blackScore == 0 || (!whiteCanPlay && !blackCanPlay)) {
             if (whiteScore > blackScore) {
                 evaluation += 10000;
             } else if (blackScore > whiteScore) {
@@ -165,34 +267,79 @@ public class Board
 
         // if this play leads to a player's opponent not being able to play
         if (!blackCanPlay) {
-            evaluation += 3000;
-        } else if (!canPlay(WHITE)) {
-            evaluation -= 3000;
+            evaluation += PASS_WEIGHT;
+        } else if (!whiteCanPlay) {
+            evaluation -= PASS_WEIGHT;
         }
 
-        int cornerScore = gameBoard[0][0] + gameBoard[0][7] + gameBoard[7][0] + gameBoard[7][7];
-        int edgeScore = 0;
-        int dangerScore = 0;
-        int pieceScore = 0;
+        // the weighted corner, danger, edge and piece scores
+        evaluation += positionalScore;
+        return evaluation;
+    }
 
-        for (int row = 0; row < ROWS; ++row) {
-            for (int col = 0; col < COLUMNS; ++col) {
-                pieceScore += gameBoard[row][col];
+    /**
+     * Works out the part of the heuristic function that depends on where the disks are from scratch. Used to set it up,
+     * after which it is maintained incrementally, and to check that it has been kept up to date.
+     * @return The weighted corner, danger, edge and piece scores.
+     */
+    int computePositionalScore() {
+        return positionalScore(whiteDisks, blackDisks);
+    }
 
-                /* a square being marked as dangerous works against the player who puts a disk there. Therefore, taking
-                 * away from the current score based on the colour of the piece. */
-                if (indexIsDangerous(row, col)) {
-                    dangerScore -= gameBoard[row][col];
-                }
+    /**
+     * @param whiteDisks The white disks of a position.
+     * @param blackDisks The black disks of the position.
+     * @return The weighted corner, danger, edge and piece scores of the position.
+     */
+    static int positionalScore(long whiteDisks, long blackDisks) {
+        // each term is the number of white disks minus the number of black disks on the squares of that kind
+        int cornerScore = Long.bitCount(whiteDisks & CORNER_MASK) - Long.bitCount(blackDisks & CORNER_MASK);
+        int edgeScore = Long.bitCount(whiteDisks & EDGE_MASK) - Long.bitCount(blackDisks & EDGE_MASK);
+        int pieceScore = Long.bitCount(whiteDisks) - Long.bitCount(blackDisks);
+
+        /* a square being marked as dangerous works against the player who puts a disk there. Therefore, taking
+         * away from the current score based on the colour of the piece. */
+        int dangerScore = Long.bitCount(blackDisks & DANGER_MASK) - Long.bitCount(whiteDisks & DANGER_MASK);
+
+        return CORNER_WEIGHT * cornerScore + DANGER_WEIGHT * dangerScore + EDGE_WEIGHT * edgeScore
+                + PIECE_WEIGHT * pieceScore;
+    }
 
-                // edges: checking the pieces that are at the edges of the board, but not at the corners
-                if (indexIsAtEdges(row, col)) {
-                    edgeScore += gameBoard[row][col];
+    /**
+     * Works out the terms that positionalScore weights, for fitting the weights (see EvaluationTuner).
+     * @param whiteDisks The white disks of a position.
+     * @param blackDisks The black disks of the position.
+     * @param features Where the terms go, at the indices of EvaluationWeights (CORNER, DANGER, EDGE and PIECE).
+     */
+    static void positionalFeatures(long whiteDisks, long blackDisks, int[] features) {
+        features[EvaluationWeights.CORNER] =
+                Long.bitCount(whiteDisks & CORNER_MASK) - Long.bitCount(blackDisks & CORNER_MASK);
+        features[EvaluationWeights.DANGER] =
+                Long.bitCount(blackDisks & DANGER_MASK) - Long.bitCount(whiteDisks & DANGER_MASK);
+        features[EvaluationWeights.EDGE] = Long.bitCount(whiteDisks & EDGE_MASK) - Long.bitCount(blackDisks & EDGE_MASK);
+        features[EvaluationWeights.PIECE] = Long.bitCount(whiteDisks) - Long.bitCount(blackDisks);
+    }
+
+    /**
+     * Builds the mask of the squares of one kind, as identified by the index helpers.
+     * @param kind 0 for corners, 1 for edges and 2 for dangerous squares.
+     * @return The mask with a bit set on every square of that kind.
+     */
+    private static long squaresMatching(int kind) {
+        long mask = 0;
+        for (int row = 0; row < ROWS; ++row) {
+            for (int col = 0; col < COLUMNS; ++col) {
+                boolean matches = switch (kind) {
+                    case 0 -> indexIsCorner(row, col);
+                    case 1 -> indexIsAtEdges(row, col);
+                    default -> indexIsDangerous(row, col);
+                };
+                if (matches) {
+                    mask |= bit(row, col);
                 }
             }
         }
-        evaluation += 200 * cornerScore + 85 * dangerScore + 60 * edgeScore + 10 * pieceScore;
-        return evaluation;
+        return mask;
     }
 
     /**
@@ -201,7 +348,7 @@ public class Board
      * @param col The column of the square.
      * @return True if the square is inside the board.
      */
-    private boolean indexInBounds(int row, int col) {
+    private static boolean indexInBounds(int row, int col) {
         return row >=0 && row < ROWS && col >= 0 && col < COLUMNS;
     }
 
@@ -211,7 +358,7 @@ public class Board
      * @param col The column of the square.
      * @return True if the square is at the edges of the board.
      */
-    private boolean indexIsAtEdges(int row, int col) {
+    private static boolean indexIsAtEdges(int row, int col) {
         boolean topEdge = row == 0 && col != 0 && col != COLUMNS - 1;
         boolean bottomEdge = row == ROWS - 1 && col != 0 && col != COLUMNS - 1;
         boolean leftEdge = col == 0 && row != 0 && row != ROWS - 1;
@@ -225,7 +372,7 @@ public class Board
      * @param col The column of the square.
      * @return True if the square is in the corners of the board.
      */
-    private boolean indexIsCorner(int row, int col) {
+    private static boolean indexIsCorner(int row, int col) {
         return  (row == 0 || row == ROWS-1) && (col == 0 || col == COLUMNS-1);
     }
 
@@ -236,7 +383,7 @@ public class Board
      * @param col The column to be checked.
      * @return True if the square is a "danger square", false otherwise.
      */
-    private boolean indexIsDangerous(int row, int col) {
+    private static boolean indexIsDangerous(int row, int col) {
         if (indexIsCorner(row, col)) {
             return false;
         }
@@ -257,47 +404,22 @@ public class Board
      */
     private boolean isValidMove(int row, int col, int playerColour) {
         // if the square entered is out of bounds
-        if (row < 0 || col < 0 || row >= ROWS || col >= COLUMNS) {
+        if (!indexInBounds(row, col)) {
             return false;
         }
 
-        // if the square entered is already occupied
-        if (gameBoard[row][col] != EMPTY) {
-            return false;
-        }
-
-        int opponentColour = playerColour * -1;
-
-        /* making a custom [8][2] 2D array called dimensions. Each of the 8 rows consists of a "pair" (due to the lack
-         * of a native Java Pair class), the "key" of which represents the difference in rows to the board square provided
-         * as a parameter to this function, and the "value" of which similarly represents the difference in columns to the
-         * board square we are currently checking.    */
-        int[][] directions = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
-
-        for (int[] direction: directions) {
-            int rowToExamine = row + direction[0];
-            int colToExamine = col + direction[1];
-            // initialising a counter for flanked pieces, for each direction
-            int flankedPieces = 0;
-
-            // if the index we are exploring is outside the board or refers to a corner square, continue
-            if (!indexInBounds(rowToExamine, colToExamine) || indexIsCorner(rowToExamine, colToExamine)) {
-                continue;
-            }
-
-            // while we keep coming across opponent pieces and the index does not go out of bounds, continue exploring
-            while (indexInBounds(rowToExamine, colToExamine) && gameBoard[rowToExamine][colToExamine] == opponentColour) {
-                ++flankedPieces;
-                rowToExamine += direction[0];
-                colToExamine += direction[1];
-            }
+        // the move is valid if the square is empty and flanks at least one line of opponent disks
+        return (legalMoves(playerColour) & bit(row, col)) != 0;
+    }
 
-            // if the loop ended because we found a piece of the player's, that means the move is valid
-            if (indexInBounds(rowToExamine, colToExamine) && gameBoard[rowToExamine][colToExamine] == playerColour && flankedPieces > 0) {
-                return true;
-            }
+    /**
+     * @return The mask of the opponent disks flipped if the player places a disk on the given square.
+     */
+    private long flipsFor(int square, int playerColour) {
+        if (playerColour == WHITE) {
+            return Bitboards.flips(square, whiteDisks, blackDisks);
         }
-        return false;
+        return Bitboards.flips(square, blackDisks, whiteDisks);
     }
 
     /**
@@ -313,59 +435,110 @@ public class Board
             return;
         }
 
-        // placing the piece and making the necessary score adjustments
-        gameBoard[row][col] = playerColour;
-        if (playerColour == WHITE) {
-            ++whiteScore;
-        } else {
-            ++blackScore;
-        }
-        setLastMove(new Move(row, col));
-        setLastPlayer(playerColour);
-
-        int opponentColour = playerColour * -1;
-        int[][] directions = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
-        for (int[] direction: directions) {
-            int rowToExamine = row + direction[0];
-            int colToExamine = col + direction[1];
-
-            // if the index we are exploring is outside the board or refers to a corner square, continue
-            if (!indexInBounds(rowToExamine, colToExamine) || indexIsCorner(rowToExamine, colToExamine)) {
-                continue;
-            }
+        int square = Bitboards.square(row, col);
+        long flipped = flipsFor(square, playerColour);
+        applyMove(square, flipped, playerColour);
+    }
 
-            // initialising a counter for flanked pieces, for each direction
-            int flankedPieces = 0;
+    /**
+     * Works like makeMove, but also records what is needed to take the move back with undoMove, so that a search can
+     * explore a single board in place instead of copying it for every child. Allocates nothing once the board has been
+     * used for this once.
+     * @param square The index of the square the disk is placed on (see Bitboards for the square numbering).
+     * @param playerColour The colour of the player making the move.
+     * @return True if the move was made, false if it was not valid (in which case the board is left untouched).
+     */
+    public boolean playMove(int square, int playerColour) {
+        if (((whiteDisks | blackDisks) & (1L << square)) != 0) {
+            return false;
+        }
+        long flipped = flipsFor(square, playerColour);
+        if (flipped == 0) {
+            return false;
+        }
 
-            // while we keep coming across opponent pieces and the index does not go out of bounds, continue exploring
-            while (indexInBounds(rowToExamine, colToExamine) && gameBoard[rowToExamine][colToExamine] == opponentColour) {
-                ++flankedPieces;
-                rowToExamine += direction[0];
-                colToExamine += direction[1];
-            }
+        if (flippedHistory == null) {
+            flippedHistory = new long[MAX_HISTORY];
+            keyHistory = new long[MAX_HISTORY];
+            positionalScoreHistory = new int[MAX_HISTORY];
+            squareHistory = new int[MAX_HISTORY];
+            lastSquareHistory = new int[MAX_HISTORY];
+            lastPlayerHistory = new int[MAX_HISTORY];
+        }
+        flippedHistory[historySize] = flipped;
+        keyHistory[historySize] = zobristKey;
+        positionalScoreHistory[historySize] = positionalScore;
+        squareHistory[historySize] = square;
+        lastSquareHistory[historySize] = lastSquare;
+        lastPlayerHistory[historySize] = lastPlayer;
+        ++historySize;
+
+        applyMove(square, flipped, playerColour);
+        return true;
+    }
 
-            // if the loop ended because we found a piece of the player's, update accordingly
-            if (indexInBounds(rowToExamine, colToExamine) && gameBoard[rowToExamine][colToExamine] == playerColour && flankedPieces > 0) {
-                // edit the scores accordingly
-                if (playerColour == WHITE) {
-                    whiteScore += flankedPieces;
-                    blackScore -= flankedPieces;
-                } else {
-                    blackScore += flankedPieces;
-                    whiteScore -= flankedPieces;
-                }
+    /**
+     * Takes back the last move made through playMove, restoring the disks, the scores and the last move and player.
+     */
+    public void undoMove() {
+        // precautionary check
+        if (historySize == 0) {
+            return;
+        }
+        --historySize;
+        long flipped = flippedHistory[historySize];
+        long placed = 1L << squareHistory[historySize];
+        int flankedPieces = Long.bitCount(flipped);
+
+        // lastPlayer still holds the colour of the player who made the move being taken back
+        if (lastPlayer == WHITE) {
+            whiteDisks &= ~(placed | flipped);
+            blackDisks |= flipped;
+            whiteScore -= flankedPieces + 1;
+            blackScore += flankedPieces;
+        } else {
+            blackDisks &= ~(placed | flipped);
+            whiteDisks |= flipped;
+            blackScore -= flankedPieces + 1;
+            whiteScore += flankedPieces;
+        }
+        zobristKey = keyHistory[historySize];
+        positionalScore = positionalScoreHistory[historySize];
+        movesKnown = 0;
+        lastSquare = lastSquareHistory[historySize];
+        lastPlayer = lastPlayerHistory[historySize];
+    }
 
-                // and edit the board accordingly
-                int rowToEdit = row + direction[0];
-                int colToEdit = col + direction[1];
+    /**
+     * Places the disk, flips the flanked disks and makes the necessary score adjustments for a move known to be valid.
+     */
+    private void applyMove(int square, long flipped, int playerColour) {
+        int flankedPieces = Long.bitCount(flipped);
+        if (playerColour == WHITE) {
+            whiteDisks |= (1L << square) | flipped;
+            blackDisks &= ~flipped;
+            whiteScore += flankedPieces + 1;
+            blackScore -= flankedPieces;
+            zobristKey ^= WHITE_KEYS[square];
+        } else {
+            blackDisks |= (1L << square) | flipped;
+            whiteDisks &= ~flipped;
+            blackScore += flankedPieces + 1;
+            whiteScore -= flankedPieces;
+            zobristKey ^= BLACK_KEYS[square];
+        }
 
-                for (int i = 0; i < flankedPieces; ++i) {
-                    gameBoard[rowToEdit][colToEdit] = playerColour;
-                    rowToEdit += direction[0];
-                    colToEdit += direction[1];
-                }
-            }
+        // a flipped disk swaps its key of one colour for the key of the other, and its weight changes sides
+        int weightChange = SQUARE_WEIGHTS[square];
+        for (; flipped != 0; flipped &= flipped - 1) {
+            int flippedSquare = Long.numberOfTrailingZeros(flipped);
+            zobristKey ^= WHITE_KEYS[flippedSquare] ^ BLACK_KEYS[flippedSquare];
+            weightChange += 2 * SQUARE_WEIGHTS[flippedSquare];
         }
+        positionalScore += playerColour * weightChange;
+        movesKnown = 0;
+        lastSquare = square;
+        lastPlayer = playerColour;
     }
 
     /**
@@ -376,25 +549,30 @@ public class Board
     public boolean isTerminal() {
         return whiteScore == 0 || blackScore == 0 || (!canPlay(WHITE) && !canPlay(BLACK));
     }
+	
+	public Move getLastMove()
+    {
+        if (this.lastSquare < 0) {
+            return new Move();
+        }
+        return new Move(this.lastSquare / COLUMNS, this.lastSquare % COLUMNS);
+    }
 
     /**
-     * Private version of isTerminal, which checks whether a state is terminal without manually calling canPlay for both colours.
-     * @param whiteCanPlay Whether the white player can play
-     * @param blackCanPlay Whether the black player can play
-     * @return True if the game has ended, false if it has not.
+     * @return The square of the last move made (see Bitboards for the square numbering), -1 if no move has been made yet.
      */
-    private boolean isTerminal(boolean whiteCanPlay, boolean blackCanPlay) {
-        return whiteScore == 0 || blackScore == 0 || (!whiteCanPlay && !blackCanPlay);
-    }
-	
-	public Move getLastMove()
+    public int getLastSquare()
     {
-        return this.lastMove;
+        return this.lastSquare;
     }
 
     public void setLastMove(Move lastMove)
     {
-        this.lastMove = new Move(lastMove);
+        if (indexInBounds(lastMove.getRow(), lastMove.getCol())) {
+            this.lastSquare = Bitboards.square(lastMove.getRow(), lastMove.getCol());
+        } else {
+            this.lastSquare = -1;
+        }
     }
 
     public void setLastPlayer(int lastPlayer)
@@ -402,6 +580,46 @@ public class Board
         this.lastPlayer = lastPlayer;
     }
 
+    public int getLastPlayer()
+    {
+        return this.lastPlayer;
+    }
+
+    /**
+     * @return The colour of the player who moves next: the opponent of the last player, unless they have to pass.
+     */
+    public int getPlayerToMove() {
+        int opponentColour = lastPlayer * -1;
+        if (!canPlay(opponentColour) && canPlay(lastPlayer)) {
+            return lastPlayer;
+        }
+        return opponentColour;
+    }
+
+    /**
+     * Builds a board by playing a sequence of moves from the start state, black first. A player who has no move available
+     * passes, as in Reversi.reversiLoop, so a pass is never written in the sequence.
+     * @param moveList The moves in the notation of Move.formattedIndex, e.g. "F5D6C3". Whitespace is ignored.
+     * @return The board after the last move.
+     * @throws IllegalArgumentException If the sequence contains a move that cannot be read or is not valid.
+     */
+    public static Board fromMoveList(String moveList) {
+        String moves = moveList.replaceAll("\\s+", "");
+        if (moves.length() % 2 != 0) {
+            throw new IllegalArgumentException("Incomplete move list: " + moveList);
+        }
+        Board board = new Board();
+        for (int i = 0; i < moves.length(); i += 2) {
+            Move move = Move.readFormattedMove(moves.substring(i, i + 2));
+            int playerColour = board.getPlayerToMove();
+            if (!board.isValidMove(move.getRow(), move.getCol(), playerColour)) {
+                throw new IllegalArgumentException("Invalid move " + moves.substring(i, i + 2) + " in " + moveList);
+            }
+            board.makeMove(move.getRow(), move.getCol(), playerColour);
+        }
+        return board;
+    }
+
     /**
      * @return The count of disks on the board for the player whose colour is passed as parameter. Returns
      * Integer.MIN_VALUE if passed an illegal argument.
@@ -415,6 +633,48 @@ public class Board
         return Integer.MIN_VALUE;
     }
 
+    /**
+     * @return The mask of the disks of the given colour (see Bitboards for the square numbering), 0 if passed an illegal argument.
+     */
+    public long getDisks(int playerColour) {
+        if (playerColour == Board.WHITE) {
+            return whiteDisks;
+        } else if (playerColour == Board.BLACK) {
+            return blackDisks;
+        }
+        return 0;
+    }
+
+    /**
+     * @return The Zobrist key of the disks on the board. Two boards with the same disks always have the same key,
+     * whatever order the moves leading to them were made in.
+     */
+    public long getZobristKey() {
+        return zobristKey;
+    }
+
+    /**
+     * @param playerColour The colour of the player to move.
+     * @return The Zobrist key of the disks on the board combined with the player to move, as used by the transposition table.
+     */
+    public long getZobristKey(int playerColour) {
+        return playerColour == BLACK ? zobristKey ^ BLACK_TO_MOVE_KEY : zobristKey;
+    }
+
+    /**
+     * Computes the Zobrist key of the disks on the board from scratch.
+     */
+    private long computeZobristKey() {
+        long key = 0;
+        for (long disks = whiteDisks; disks != 0; disks &= disks - 1) {
+            key ^= WHITE_KEYS[Long.numberOfTrailingZeros(disks)];
+        }
+        for (long disks = blackDisks; disks != 0; disks &= disks - 1) {
+            key ^= BLACK_KEYS[Long.numberOfTrailingZeros(disks)];
+        }
+        return key;
+    }
+
     /**
      * Called to calculate the winner of the game.
      * @return Board.WHITE (1) if white won, Board.BLACK (-1) if black won, Board.EMPTY (0) if the game ended as a tie,
@@ -439,13 +699,12 @@ public class Board
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof Board board)) return false;
-        return lastPlayer == board.lastPlayer && whiteScore == board.whiteScore && blackScore == board.blackScore && Arrays.deepEquals(gameBoard, board.gameBoard) && Objects.equals(lastMove, board.lastMove);
+        return lastPlayer == board.lastPlayer && whiteScore == board.whiteScore && blackScore == board.blackScore && whiteDisks == board.whiteDisks && blackDisks == board.blackDisks && lastSquare == board.lastSquare;
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(lastPlayer, whiteScore, blackScore, lastMove);
-        result = 31 * result + Arrays.deepHashCode(gameBoard);
-        return result;
+        // boards that are equal have the same disks, and therefore the same key
+        return Long.hashCode(zobristKey);
     }
 }
\ No newline at end of file
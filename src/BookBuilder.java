@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Builds an opening book (see OpeningBook) from games written as move lists, from self-play, or from both. <br>
+ * Usage:
+ * <pre>
+ *  java BookBuilder output [--games file] [--self-play games] [--plies n] [--depth n] [--random n] [--seed n]
+ * </pre>
+ * Options:
+ * <ul>
+ *     <li>--games: a text file of games, one per line, in the notation of Move.formattedIndex (e.g. "F5 D6 C3" or
+ *     "F5D6C3"). Empty lines and lines starting with # are skipped, and so are games that are not valid (a move
+ *     that cannot be read or is not legal, or a move list with a character left over), which are counted apart as
+ *     GameArchive does.</li>
+ *     <li>--self-play: the number of games the engine plays against itself, searching to the given depth (6 by
+ *     default). To vary the games, each one starts with a few random moves (2 by default), which are not recorded.</li>
+ *     <li>--plies: only the first moves of every game go into the book, 12 by default.</li>
+ * </ul>
+ */
+public class BookBuilder {
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java BookBuilder output [--games file] [--self-play games] [--plies n] "
+                    + "[--depth n] [--random n] [--seed n]");
+            System.exit(2);
+        }
+        Path output = Path.of(args[0]);
+        Path games = null;
+        int selfPlayGames = 0;
+        int plies = 12;
+        int depth = 6;
+        int randomMoves = 2;
+        long seed = System.nanoTime();
+        for (int i = 1; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--games" -> games = Path.of(args[++i]);
+                case "--self-play" -> selfPlayGames = Integer.parseInt(args[++i]);
+                case "--plies" -> plies = Integer.parseInt(args[++i]);
+                case "--depth" -> depth = Integer.parseInt(args[++i]);
+                case "--random" -> randomMoves = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                default -> throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+        }
+
+        OpeningBook.Builder builder = new OpeningBook.Builder();
+        if (games != null) {
+            int lines = 0;
+            int invalid = 0;
+            for (String line : Files.readAllLines(games)) {
+                line = line.strip();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    if (!addGame(builder, line, plies)) {
+                        ++invalid;
+                    }
+                    ++lines;
+                }
+            }
+            System.out.println("Read " + lines + " games (" + invalid + " not valid) from " + games);
+        }
+        if (selfPlayGames > 0) {
+            selfPlay(builder, selfPlayGames, plies, depth, randomMoves, new SplittableRandom(seed));
+            System.out.println("Played " + selfPlayGames + " games at depth " + depth);
+        }
+
+        int entries = builder.write(output);
+        System.out.println("Wrote " + entries + " moves in " + builder.positions() + " positions to " + output);
+    }
+
+    /**
+     * Records the first moves of a game written as a move list, if the whole game is valid. A player who has no move
+     * passes, as in Board.fromMoveList, which the game is checked with.
+     * @return False if the game contains a move that cannot be read or is not valid, or ends with a character that is
+     * not a whole move, in which case none of it is recorded.
+     */
+    private static boolean addGame(OpeningBook.Builder builder, String moveList, int plies) {
+        try {
+            Board.fromMoveList(moveList);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        String moves = moveList.replaceAll("\\s+", "");
+        Board board = new Board();
+        for (int i = 0; i < moves.length() && i / 2 < plies; i += 2) {
+            Move move = Move.readFormattedMove(moves.substring(i, i + 2));
+            int playerColour = board.getPlayerToMove();
+            builder.add(board, playerColour, Bitboards.square(move.getRow(), move.getCol()));
+            board.makeMove(move.getRow(), move.getCol(), playerColour);
+        }
+        return true;
+    }
+
+    /**
+     * Plays games of the engine against itself and records the moves it chooses.
+     */
+    private static void selfPlay(OpeningBook.Builder builder, int games, int plies, int depth, int randomMoves,
+                                 SplittableRandom random) {
+        // the two players take turns, so they can share a table
+        TranspositionTable table = new TranspositionTable();
+        Player white = new Player(depth, Board.WHITE, table);
+        Player black = new Player(depth, Board.BLACK, table);
+        for (int game = 0; game < games; ++game) {
+            Board board = new Board();
+            for (int ply = 0; ply < plies && !board.isTerminal(); ++ply) {
+                int colour = board.getPlayerToMove();
+                int square;
+                if (ply < randomMoves) {
+                    long moves = board.legalMoves(colour);
+                    for (int skip = random.nextInt(Long.bitCount(moves)); skip > 0; --skip) {
+                        moves &= moves - 1;
+                    }
+                    square = Long.numberOfTrailingZeros(moves);
+                } else {
+                    Move move = (colour == Board.WHITE ? white : black).minimax(board);
+                    square = Bitboards.square(move.getRow(), move.getCol());
+                    builder.add(board, colour, square);
+                }
+                board.makeMove(square / 8, square % 8, colour);
+            }
+        }
+    }
+}
@@ -0,0 +1,417 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Solves positions close to the end of the game exactly, instead of estimating them with the heuristic function. <br>
+ * The solver plays every line out to the end of the game (passing when a player has no move, as in Reversi.reversiLoop)
+ * and scores it by the disk difference of the final board, so the result is the exact final margin with best play from
+ * both sides. It works on the two bitboards directly, negamax style, and allocates nothing while searching.
+ */
+public class EndgameSolver
+{
+    /** A number of empty squares to solve from (see Player.setEndgameThreshold), which takes well under a second. */
+    public static final int DEFAULT_THRESHOLD = 16;
+
+    /* with more empty squares than this, moves are ordered fastest-first (the moves that leave the opponent with the
+     * fewest replies first). At or below it, counting the replies costs
+     * more than it saves (see searchShallow). */
+    private static final int FASTEST_FIRST_EMPTIES = 5;
+
+    // positions with fewer empty squares than this are cheaper to solve again than to look up in the table
+    private static final int HASH_EMPTIES = 8;
+
+    /* the stable disks of the opponent are only counted when alpha is at least this high (and the opponent has enough
+     * disks), as only then can enough of them be stable to prove that the player cannot do better than alpha */
+    private static final int STABILITY_ALPHA = 8;
+
+    private static final long CORNER_SQUARES = 0x8100000000000081L;
+
+    // the quadrant (0 to 3) of every square, as a bit of the parity mask
+    private static final int[] QUADRANT_BIT = new int[64];
+    private static final long[] QUADRANT_MASK = new long[16];
+
+    static {
+        for (int square = 0; square < 64; ++square) {
+            int row = square / 8;
+            int col = square % 8;
+            QUADRANT_BIT[square] = 1 << ((row / 4) * 2 + col / 4);
+        }
+        // the squares of every combination of quadrants, so that the moves in the odd quadrants can be found with one mask
+        for (int quadrants = 0; quadrants < 16; ++quadrants) {
+            for (int square = 0; square < 64; ++square) {
+                if ((quadrants & QUADRANT_BIT[square]) != 0) {
+                    QUADRANT_MASK[quadrants] |= 1L << square;
+                }
+            }
+        }
+    }
+
+    // per-ply buffers for fastest-first ordering, holding each move with its score and the disks it flips
+    private final int[][] moveLists = new int[64][32];
+    private final int[][] moveScores = new int[64][32];
+    private final long[][] moveFlips = new long[64][32];
+
+    /* positions already solved, or already bounded, in this solve or a previous one. Every result is exact to the end
+     * of the game, so the depth stored is simply the number of empty squares. */
+    private final TranspositionTable transpositionTable;
+
+    private int bestSquare;
+    private long nodes;
+
+    // set from another thread to end the solve early, null if the solver is never stopped
+    private AtomicBoolean stopFlag;
+    // the System.nanoTime() by which a solve has to return, 0 for none
+    private long deadline;
+    private int nodesUntilTimeCheck;
+    private boolean aborted;    // set once the solve is stopped or runs out of time, so that it unwinds
+
+    public EndgameSolver()
+    {
+        this(TranspositionTable.DEFAULT_MEGABYTES);
+    }
+
+    /**
+     * @param megabytes The memory budget of the transposition table of the solver.
+     */
+    public EndgameSolver(int megabytes)
+    {
+        this.transpositionTable = new TranspositionTable(megabytes, TranspositionTable.ReplacementPolicy.DEPTH_PREFERRED);
+    }
+
+    /**
+     * Solves the board for the player to move.
+     * @param board The board to solve.
+     * @param playerColour The colour of the player to move.
+     * @return The final disk difference (the player's disks minus their opponent's) with best play from both sides.
+     */
+    public int solve(Board board, int playerColour) {
+        return solve(board.getDisks(playerColour), board.getDisks(-playerColour));
+    }
+
+    /**
+     * Solves the position for the player to move.
+     * @param player The disks of the player to move.
+     * @param opponent The disks of their opponent.
+     * @return The final disk difference (the player's disks minus their opponent's) with best play from both sides.
+     */
+    public int solve(long player, long opponent) {
+        bestSquare = -1;
+        nodes = 0;
+        aborted = false;
+        nodesUntilTimeCheck = 1024;
+        transpositionTable.newSearch();
+        long empty = ~(player | opponent);
+        int empties = Long.bitCount(empty);
+        int parity = parityOf(empty);
+        if (Bitboards.legalMoves(player, opponent) == 0) {
+            ++nodes;
+            if (Bitboards.legalMoves(opponent, player) == 0) {
+                // neither player can play, so the game is over
+                return Long.bitCount(player) - Long.bitCount(opponent);
+            }
+            /* the player passes, and the opponent is searched one ply down, so that their reply is not taken for the
+             * best move of the player */
+            return -search(opponent, player, -64, 64, empties, parity, true, 1);
+        }
+        return search(player, opponent, -64, 64, empties, parity, false, 0);
+    }
+
+    /**
+     * Lets another thread stop the solver. Once the flag is set, solve returns as soon as it can, with a result that
+     * means nothing (and without storing anything it found after the flag was set in the transposition table).
+     * @param stopFlag The flag, or null to never stop.
+     */
+    public void setStopFlag(AtomicBoolean stopFlag)
+    {
+        this.stopFlag = stopFlag;
+    }
+
+    /**
+     * Gives every later solve a time limit. Once it passes, solve returns as soon as it can, as if stopped (see
+     * setStopFlag).
+     * @param deadline The System.nanoTime() by which solve has to return, 0 for no limit.
+     */
+    public void setDeadline(long deadline)
+    {
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return True if the last call of solve was stopped, or ran out of time, before it finished. Its result then
+     * means nothing.
+     */
+    public boolean wasStopped() {
+        return aborted;
+    }
+
+    /**
+     * @return The square of the best move found by the last call of solve (see Bitboards for the square numbering),
+     * -1 if the player to move had to pass.
+     */
+    public int getBestSquare() {
+        return bestSquare;
+    }
+
+    /**
+     * @return The number of positions visited by the last call of solve.
+     */
+    public long getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * @param player The disks of the player to move.
+     * @param opponent The disks of their opponent.
+     * @param alpha The best score the player to move is already guaranteed.
+     * @param beta The best score their opponent is already guaranteed (negated).
+     * @param empties The number of empty squares.
+     * @param parity The quadrants with an odd number of empty squares, one bit per quadrant.
+     * @param passed Whether the opponent passed to get to this position.
+     * @param ply The distance from the root.
+     * @return The final disk difference from the point of view of the player to move.
+     */
+    private int search(long player, long opponent, int alpha, int beta, int empties, int parity, boolean passed, int ply) {
+        ++nodes;
+        if (empties == 1 && ply > 0) {
+            return lastMove(player, opponent);
+        }
+
+        /* the opponent keeps their stable disks whatever happens, which caps the final difference the player can reach.
+         * If the cap is no better than alpha, the position does not need to be searched. */
+        if (alpha >= STABILITY_ALPHA && 64 - 2 * Long.bitCount(opponent) <= alpha) {
+            int maximum = 64 - 2 * Long.bitCount(Bitboards.stableDisks(opponent, player | opponent));
+            if (maximum <= alpha) {
+                return maximum;
+            }
+        }
+
+        if (empties <= FASTEST_FIRST_EMPTIES) {
+            return searchShallow(player, opponent, alpha, beta, empties, parity, passed, ply);
+        }
+
+        long moves = Bitboards.legalMoves(player, opponent);
+        if (moves == 0) {
+            if (passed) {
+                // neither player can play, so the game is over
+                return Long.bitCount(player) - Long.bitCount(opponent);
+            }
+            return -search(opponent, player, -beta, -alpha, empties, parity, true, ply);
+        }
+
+        long key = 0;
+        int hashSquare = -1;
+        if (empties >= HASH_EMPTIES) {
+            if (isStopped()) {
+                return alpha;
+            }
+            key = hash(player, opponent);
+            long entry = transpositionTable.probe(key);
+            if (entry != 0) {
+                // a stored bound narrows the window, and may close it altogether
+                int value = TranspositionTable.value(entry);
+                int bound = TranspositionTable.bound(entry);
+                if (bound != TranspositionTable.UPPER_BOUND) {
+                    alpha = Math.max(alpha, value);
+                }
+                if (bound != TranspositionTable.LOWER_BOUND) {
+                    beta = Math.min(beta, value);
+                }
+                if (alpha >= beta && ply > 0) {
+                    return value;
+                }
+                hashSquare = TranspositionTable.move(entry);
+            }
+        }
+        int alphaAtStart = alpha;
+        int best = -65;
+        int bestMove = -1;
+
+        int count = orderFastestFirst(player, opponent, moves, parity, hashSquare, ply);
+        int[] moveList = moveLists[ply];
+        long[] flipsList = moveFlips[ply];
+        for (int i = 0; i < count; ++i) {
+            int square = moveList[i];
+            long flipped = flipsList[i];
+            long newPlayer = player | flipped | (1L << square);
+            long newOpponent = opponent & ~flipped;
+            int newParity = parity ^ QUADRANT_BIT[square];
+
+            /* principal variation search: the first move is searched with the full window, the rest only to prove
+             * that they are no better than it, unless they turn out to be. */
+            int score;
+            if (i == 0) {
+                score = -search(newOpponent, newPlayer, -beta, -alpha, empties - 1, newParity, false, ply + 1);
+            } else {
+                score = -search(newOpponent, newPlayer, -alpha - 1, -alpha, empties - 1, newParity, false, ply + 1);
+                if (score > alpha && score < beta) {
+                    score = -search(newOpponent, newPlayer, -beta, -score, empties - 1, newParity, false, ply + 1);
+                }
+            }
+
+            if (score > best) {
+                best = score;
+                bestMove = square;
+                if (ply == 0) {
+                    bestSquare = square;
+                }
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        // once stopped, the children may have returned anything, which must not be stored
+        if (empties >= HASH_EMPTIES && !aborted) {
+            int bound = best >= beta ? TranspositionTable.LOWER_BOUND
+                    : best <= alphaAtStart ? TranspositionTable.UPPER_BOUND : TranspositionTable.EXACT;
+            transpositionTable.store(key, empties, bound, best, bestMove);
+        }
+        return best;
+    }
+
+    /**
+     * @return True once the solve has been stopped or has run out of time. The clock is only read every 1024 calls.
+     */
+    private boolean isStopped() {
+        if (!aborted && stopFlag != null && stopFlag.get()) {
+            aborted = true;
+        }
+        if (!aborted && deadline != 0 && --nodesUntilTimeCheck <= 0) {
+            nodesUntilTimeCheck = 1024;
+            aborted = System.nanoTime() >= deadline;
+        }
+        return aborted;
+    }
+
+    /**
+     * Searches a position with only a few empty squares left. Generating the legal moves costs more than it saves this
+     * close to the end, so every empty square next to an opponent disk is simply tried, and skipped if it flips nothing.
+     * Squares in quadrants with an odd number of empty squares are tried first. The parameters are the ones of search.
+     */
+    private int searchShallow(long player, long opponent, int alpha, int beta, int empties, int parity, boolean passed,
+                              int ply) {
+        long empty = ~(player | opponent);
+        long candidates = empty & Bitboards.neighbours(opponent);
+        long oddSquares = candidates & QUADRANT_MASK[parity];
+        int best = -65;
+        for (int pass = 0; pass < 2; ++pass) {
+            long remaining = pass == 0 ? oddSquares : candidates & ~oddSquares;
+            for (; remaining != 0; remaining &= remaining - 1) {
+                int square = Long.numberOfTrailingZeros(remaining);
+                long flipped = Bitboards.flips(square, player, opponent);
+                if (flipped == 0) {
+                    continue;
+                }
+                int score = -search(opponent & ~flipped, player | flipped | (1L << square), -beta, -alpha,
+                        empties - 1, parity ^ QUADRANT_BIT[square], false, ply + 1);
+                if (score > best) {
+                    best = score;
+                    if (ply == 0) {
+                        bestSquare = square;
+                    }
+                    if (score > alpha) {
+                        alpha = score;
+                        if (alpha >= beta) {
+                            return best;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (best == -65) {
+            if (passed || empties == 0) {
+                // neither player can play, so the game is over
+                return Long.bitCount(player) - Long.bitCount(opponent);
+            }
+            return -search(opponent, player, -beta, -alpha, empties, parity, true, ply);
+        }
+        return best;
+    }
+
+    /**
+     * Scores the position with a single empty square without generating any moves.
+     */
+    private int lastMove(long player, long opponent) {
+        int square = Long.numberOfTrailingZeros(~(player | opponent));
+        int difference = Long.bitCount(player) - Long.bitCount(opponent);
+
+        int flipped = Long.bitCount(Bitboards.flips(square, player, opponent));
+        if (flipped > 0) {
+            return difference + 1 + 2 * flipped;
+        }
+        // the player has to pass, so the opponent gets the last square if they can play it
+        flipped = Long.bitCount(Bitboards.flips(square, opponent, player));
+        if (flipped > 0) {
+            return difference - 1 - 2 * flipped;
+        }
+        return difference;
+    }
+
+    /**
+     * Fills the move list of the given ply with the moves, ordered so that the ones leaving the opponent with the
+     * fewest replies come first. Corners and moves into quadrants with an odd number of empty squares get a small bonus,
+     * and the move stored in the transposition table (if any) always comes first.
+     * @return The number of moves in the list.
+     */
+    private int orderFastestFirst(long player, long opponent, long moves, int parity, int hashSquare, int ply) {
+        int[] moveList = moveLists[ply];
+        int[] scores = moveScores[ply];
+        long[] flipsList = moveFlips[ply];
+        int count = 0;
+        for (; moves != 0; moves &= moves - 1) {
+            int square = Long.numberOfTrailingZeros(moves);
+            long flipped = Bitboards.flips(square, player, opponent);
+            long newPlayer = player | flipped | (1L << square);
+            long newOpponent = opponent & ~flipped;
+            long replies = Bitboards.legalMoves(newOpponent, newPlayer);
+            // a reply on a corner counts double, as it is the reply most likely to be good for the opponent
+            int score = -16 * (Long.bitCount(replies) + Long.bitCount(replies & CORNER_SQUARES));
+            // the empty squares next to the player's disks are where the opponent is likely to find replies later on
+            score -= 6 * Long.bitCount(Bitboards.neighbours(newPlayer) & ~(newPlayer | newOpponent));
+            if (((1L << square) & CORNER_SQUARES) != 0) {
+                score += 8;
+            }
+            if ((parity & QUADRANT_BIT[square]) != 0) {
+                score += 4;
+            }
+            if (square == hashSquare) {
+                score = Integer.MAX_VALUE;
+            }
+
+            // insertion sort, highest score first
+            int i = count++;
+            while (i > 0 && scores[i - 1] < score) {
+                moveList[i] = moveList[i - 1];
+                scores[i] = scores[i - 1];
+                flipsList[i] = flipsList[i - 1];
+                --i;
+            }
+            moveList[i] = square;
+            scores[i] = score;
+            flipsList[i] = flipped;
+        }
+        return count;
+    }
+
+    /**
+     * @return A 64-bit key for the position, mixed well enough to index the transposition table with.
+     */
+    private static long hash(long player, long opponent) {
+        long key = player * 0x9e3779b97f4a7c15L + Long.rotateLeft(opponent * 0xc2b2ae3d27d4eb4fL, 31);
+        return key ^ (key >>> 29);
+    }
+
+    /**
+     * @return The quadrants with an odd number of empty squares, one bit per quadrant.
+     */
+    private static int parityOf(long empty) {
+        int parity = 0;
+        for (; empty != 0; empty &= empty - 1) {
+            parity ^= QUADRANT_BIT[Long.numberOfTrailingZeros(empty)];
+        }
+        return parity;
+    }
+}
@@ -0,0 +1,340 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the engine without the terminal interface of Reversi, for match managers and graphical interfaces. The engine
+ * speaks a line protocol on stdin and stdout and, with --port, to any number of clients connected to a local TCP port
+ * at the same time. Every client (and stdin) gets its own EngineSession, with its own board and players. <br>
+ * Usage:
+ * <pre>
+ *  java EngineServer [--port n] [--board-evaluation] [--weights file] [--probcut file] [--table-file file]
+ *                    [--table-megabytes n] [--table-read-only]
+ * </pre>
+ * The players search with the principal variation search and a PatternEvaluator (with the weights of the given file,
+ * or the default ones), unless --board-evaluation makes them use Board.evaluate. With --probcut, they also prune with
+ * the ProbCut parameters of the given file, which have to be fitted for the same heuristic function. <br>
+ * With --table-file, every session searches with the PersistentTranspositionTable of the given file (created with
+ * --table-megabytes, 256 by default, if it does not exist), which keeps what was searched from one run to the next
+ * and shares it with any other server using the file. --table-read-only only probes it, for servers that should
+ * benefit from the table without filling it. <br>
+ * Commands, one per line (moves are written as in Move.formattedIndex, and passes are never written, as in
+ * Board.fromMoveList):
+ * <ul>
+ *     <li>new: starts a new game.</li>
+ *     <li>position [moves]: sets the position to the start position followed by the moves, e.g. "position F5D6C3".</li>
+ *     <li>play move: plays a move for the player to move.</li>
+ *     <li>undo: takes the last move back.</li>
+ *     <li>go [time milliseconds] [depth n]: searches the position for the player to move, and replies
+ *     "bestmove move value v nodes n time t" when done (or "bestmove none" if it was stopped before it had a move).
+ *     The value is for the player to move.</li>
+ *     <li>analyze: searches the position until stopped, replying "info depth d move m value v nodes n" for every
+ *     iteration that finishes, and "bestmove" at the end.</li>
+ *     <li>ponder: sent once the engine's move has been played, guesses the opponent's reply and searches the position
+ *     after it in the background, without replying (see Ponderer). If the opponent plays that reply, the next go
+ *     without options carries on with the search (a ponder hit), and replies within what is left of the time setting,
+ *     counted from the ponder command. Any other command that changes the position or starts a search stops it.</li>
+ *     <li>stop: stops the search that is running, which replies as soon as it has unwound.</li>
+ *     <li>set name value: changes a setting, one of depth, time, threads, endgame, table and pattern (see
+ *     EngineSession.set).</li>
+ *     <li>show: prints the board.</li>
+ *     <li>ping [id]: replies "pong [id]", once every command before it has been handled.</li>
+ *     <li>quit: ends the session (and the server, for stdin), replying "bye".</li>
+ * </ul>
+ * A command that changes the position, or starts a search, stops the search that is running first. Errors are replied
+ * as "error" followed by the reason.
+ */
+public class EngineServer
+{
+    private static final int MAX_LINE_LENGTH = 4096;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService searches;
+    private final PatternEvaluator evaluator;
+    private final ProbCut probCut;
+    private final TranspositionTable sharedTable;
+    // work handed to the selector thread by the searching threads, such as the commands held back by a stop
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    public static void main(String[] args) throws IOException {
+        int port = -1;
+        boolean boardEvaluation = false;
+        Path weights = null;
+        Path probCutFile = null;
+        Path tableFile = null;
+        int tableMegabytes = 256;
+        boolean tableReadOnly = false;
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--board-evaluation" -> boardEvaluation = true;
+                case "--weights" -> weights = Path.of(args[++i]);
+                case "--probcut" -> probCutFile = Path.of(args[++i]);
+                case "--table-file" -> tableFile = Path.of(args[++i]);
+                case "--table-megabytes" -> tableMegabytes = Integer.parseInt(args[++i]);
+                case "--table-read-only" -> tableReadOnly = true;
+                default -> throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+        }
+        PatternEvaluator evaluator = null;
+        if (!boardEvaluation) {
+            evaluator = weights != null ? PatternEvaluator.load(weights) : new PatternEvaluator();
+        }
+        ProbCut probCut = probCutFile != null ? ProbCut.load(probCutFile) : null;
+        TranspositionTable sharedTable = null;
+        if (tableFile != null) {
+            long fingerprint = evaluator != null ? evaluator.fingerprint()
+                    : EvaluationWeights.fromProperty().fingerprint();
+            sharedTable = PersistentTranspositionTable.open(tableFile, tableMegabytes, fingerprint, tableReadOnly);
+        }
+
+        // the searches of every session run on threads of their own, which do not keep the server alive
+        ExecutorService searches = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "search");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Thread network = null;
+        if (port >= 0) {
+            EngineServer server = new EngineServer(port, searches, evaluator, probCut, sharedTable);
+            System.err.println("Listening on " + server.serverChannel.getLocalAddress());
+            network = new Thread(server::serve, "network");
+            network.start();
+        }
+
+        /* stdin is read by a thread that blocks, so the commands held back by a stop are handled by the searching
+         * thread that waited for it instead (the session handles one command at a time either way) */
+        EngineSession session = new EngineSession(searches, line -> {
+            synchronized (System.out) {
+                System.out.println(line);
+                System.out.flush();
+            }
+        }, held -> {
+            if (!held.resume()) {
+                System.exit(0);
+            }
+        }, evaluator, probCut, sharedTable);
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!session.handle(line)) {
+                System.exit(0);
+            }
+        }
+        // without stdin, the server carries on for its network clients, if it has any
+        session.close();
+        if (network == null) {
+            System.exit(0);
+        }
+    }
+
+    /**
+     * A client connected to the port, with its session and what has been read from it but not yet handled.
+     */
+    private final class Connection
+    {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final EngineSession session;
+        private final StringBuilder line = new StringBuilder();
+        private final Queue<ByteBuffer> pending = new ArrayDeque<>();   // replies not yet written, guarded by this
+        private boolean closing;    // set once the session has ended, so that the channel is closed once written
+
+        private Connection(SocketChannel channel) throws IOException
+        {
+            this.channel = channel;
+            this.key = channel.register(selector, SelectionKey.OP_READ, this);
+            this.session = new EngineSession(searches, this::send, held -> post(this::resume), evaluator, probCut,
+                    sharedTable);
+        }
+
+        /**
+         * Queues a reply, from any thread, and has the selector write it once the channel can take it.
+         */
+        private synchronized void send(String reply) {
+            if (!key.isValid()) {
+                return;
+            }
+            pending.add(ByteBuffer.wrap((reply + "\n").getBytes(StandardCharsets.UTF_8)));
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            selector.wakeup();
+        }
+
+        /**
+         * Writes as much of the queued replies as the channel takes without blocking.
+         */
+        private synchronized void write() throws IOException {
+            while (!pending.isEmpty()) {
+                ByteBuffer buffer = pending.peek();
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    return;
+                }
+                pending.remove();
+            }
+            if (closing) {
+                close();
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        /**
+         * Hands every complete line read to the session.
+         */
+        private void read(ByteBuffer buffer) throws IOException {
+            buffer.clear();
+            int count = channel.read(buffer);
+            if (count < 0) {
+                close();
+                return;
+            }
+            buffer.flip();
+            // the protocol is ASCII, so every byte is a character
+            while (buffer.hasRemaining() && !closing) {
+                char c = (char) (buffer.get() & 0xFF);
+                if (c == '\n') {
+                    if (!session.handle(line.toString())) {
+                        end();
+                    }
+                    line.setLength(0);
+                } else if (c != '\r') {
+                    line.append(c);
+                    if (line.length() > MAX_LINE_LENGTH) {
+                        close();
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Handles the commands the session held back while a stopped search unwound, on the selector thread.
+         */
+        private void resume() {
+            if (!key.isValid()) {
+                return;
+            }
+            try {
+                if (!session.resume()) {
+                    end();
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Closes the channel once the replies queued, the last of which ends the session, have been written.
+         */
+        private void end() throws IOException {
+            synchronized (this) {
+                closing = true;
+            }
+            write();
+        }
+
+        private synchronized void close() {
+            session.close();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // the client is gone either way
+            }
+        }
+    }
+
+    /**
+     * Opens the port, on the loopback address only, as the protocol has no authentication.
+     * @param port The port to listen on, 0 for any free one.
+     * @param searches Where the searches of the sessions run.
+     * @param evaluator The heuristic function of the players, null to use Board.evaluate.
+     * @param probCut The ProbCut parameters of the players, null to search without ProbCut.
+     * @param sharedTable The transposition table every session starts with, null for each to have its own.
+     * @throws IOException If the port cannot be opened.
+     */
+    public EngineServer(int port, ExecutorService searches, PatternEvaluator evaluator, ProbCut probCut,
+                        TranspositionTable sharedTable)
+            throws IOException
+    {
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.searches = searches;
+        this.evaluator = evaluator;
+        this.probCut = probCut;
+        this.sharedTable = sharedTable;
+    }
+
+    /**
+     * Has the selector thread run a task, from any thread.
+     */
+    private void post(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Accepts clients and handles what they send, on the calling thread, until the server channel fails. A client whose
+     * connection fails is dropped without affecting the others.
+     */
+    public void serve() {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try {
+            while (true) {
+                selector.select();
+                for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isAcceptable()) {
+                        SocketChannel channel = serverChannel.accept();
+                        if (channel != null) {
+                            channel.configureBlocking(false);
+                            new Connection(channel);
+                        }
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            connection.read(buffer);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.write();
+                        }
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,489 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * One game played through the line protocol of EngineServer: a board, a player for each colour and the search that
+ * is running, if any. The commands are handled one at a time by whichever thread reads them, while searches run on
+ * the executor the session is given and write their replies from there. <br>
+ * A command that has to stop a search never waits for it on the thread that reads the commands, which may be serving
+ * other clients as well: the search is waited for on the executor, and the command, with every command read after
+ * it, is held back until the search has unwound, then handled by resume (see the resume parameter of the
+ * constructor). The replies come in the order of the commands either way. <br>
+ * Every reply is one line. A command that fails replies "error" followed by the reason, and a search replies when it
+ * finishes rather than when it is started (see EngineServer for the commands).
+ */
+public class EngineSession
+{
+    // a search without a time limit (analyze) is given this budget, which it never reaches
+    private static final long UNLIMITED_MILLIS = 24L * 60 * 60 * 1000;
+
+    private static final int MAX_DEPTH = 60;
+
+    /**
+     * What a search was started for, which decides what it replies.
+     */
+    private enum Mode
+    {
+        GO,         // replies with the best move once done
+        ANALYZE     // also reports every iteration as it finishes
+    }
+
+    private final ExecutorService executor;
+    private final Consumer<String> output;
+    private final Consumer<EngineSession> resume;
+
+    private Board board = new Board();
+    private final List<String> moves = new ArrayList<>();
+
+    // the settings the players are created with (see set)
+    private int depth = MAX_DEPTH;
+    private long timeBudget = 1000;
+    private int threads = 1;
+    private int endgameThreshold = EndgameSolver.DEFAULT_THRESHOLD;
+    private PatternEvaluator patternEvaluator;
+    private ProbCut probCut;
+    private int tableMegabytes = TranspositionTable.DEFAULT_MEGABYTES;
+
+    // both players share one table, so that what one colour searched (or pondered) helps the other
+    private TranspositionTable table;
+    // the table shared with every session (see EngineServer --table-file), null if the session makes its own
+    private TranspositionTable sharedTable;
+    private final Player[] players = new Player[2];     // white first, created when first needed
+
+    private Future<?> search;   // the search running, or the last one
+    private Player searching;   // the player running it, null if none is
+    private Ponderer ponderer;  // thinking on the opponent's time, null if not
+
+    private final Deque<String> waiting = new ArrayDeque<>();   // commands held back until a stopped search unwinds
+    private boolean stopping;   // set while a search that was stopped has not unwound yet
+    private boolean closed;
+
+    /**
+     * @param executor Where the searches of the session run.
+     * @param output Where the replies are written, one line at a time. It is called from the searching threads as well
+     * as from the one handling the commands, and has to write every line whole.
+     * @param resume Called with the session, from a thread of the executor, once a search stopped by a command has
+     * unwound and the commands held back meanwhile can be handled. It has to call resume, on whichever thread handles
+     * the commands.
+     * @param patternEvaluator The heuristic function of the players, or null to use Board.evaluate.
+     * @param probCut The ProbCut parameters of the players (fitted for that heuristic function), or null to search
+     * without ProbCut.
+     * @param sharedTable The transposition table of the players, shared with other sessions, or null for the session
+     * to make its own. The session makes its own anyway once the table or pattern setting changes.
+     */
+    public EngineSession(ExecutorService executor, Consumer<String> output, Consumer<EngineSession> resume,
+                         PatternEvaluator patternEvaluator, ProbCut probCut, TranspositionTable sharedTable)
+    {
+        this.executor = executor;
+        this.output = output;
+        this.resume = resume;
+        this.patternEvaluator = patternEvaluator;
+        this.probCut = probCut;
+        this.sharedTable = sharedTable;
+    }
+
+    /**
+     * Handles one line of the protocol, or holds it back while a stopped search unwinds. Blank lines and lines
+     * starting with '#' are ignored.
+     * @param line The command with its arguments, separated by whitespace.
+     * @return False if the command ended the session (quit), true otherwise.
+     */
+    public synchronized boolean handle(String line) {
+        if (stopping || !waiting.isEmpty()) {
+            waiting.add(line);
+            return true;
+        }
+        return run(line);
+    }
+
+    /**
+     * Handles the commands held back while a stopped search unwound, until they are all handled or one of them stops
+     * a search in turn.
+     * @return False if one of the commands ended the session (quit), true otherwise.
+     */
+    public synchronized boolean resume() {
+        while (!stopping && !waiting.isEmpty()) {
+            if (!run(waiting.remove())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Handles a command, and holds it back, first in line, if it had to stop a search (it is then handled again once
+     * the search has unwound, which it leaves as it was until then).
+     */
+    private boolean run(String line) {
+        boolean going = execute(line);
+        if (stopping) {
+            waiting.addFirst(line);
+        }
+        return going;
+    }
+
+    private boolean execute(String line) {
+        String[] words = line.strip().split("\\s+");
+        if (words[0].isEmpty() || words[0].startsWith("#")) {
+            return true;
+        }
+        try {
+            switch (words[0].toLowerCase(Locale.ROOT)) {
+                case "new" -> setPosition("");
+                case "position" -> setPosition(String.join("", List.of(words).subList(1, words.length)));
+                case "play" -> play(words);
+                case "undo" -> undo();
+                case "go" -> go(words);
+                case "analyze" -> startSearch(Mode.ANALYZE, UNLIMITED_MILLIS, depth);
+                case "ponder" -> ponder();
+                case "stop" -> stopSearch();
+                case "set" -> set(words);
+                case "show" -> show();
+                // every command before it has been handled by the time the reply is written, as they are handled in order
+                case "ping" -> output.accept(words.length > 1 ? "pong " + words[1] : "pong");
+                case "quit" -> {
+                    close();
+                    output.accept("bye");
+                    return false;
+                }
+                default -> output.accept("error unknown command " + words[0]);
+            }
+        } catch (IllegalArgumentException e) {
+            output.accept("error " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Stops the search of the session, if one is running, and stops pondering, without waiting for either, and drops
+     * the commands held back. Called when the client goes away.
+     */
+    public synchronized void close() {
+        closed = true;
+        waiting.clear();
+        if (ponderer != null || search != null) {
+            unwind();
+        }
+    }
+
+    private void setPosition(String moveList) {
+        Board position = Board.fromMoveList(moveList);
+        if (!stopSearch()) {
+            return;
+        }
+        board = position;
+        moves.clear();
+        String compact = moveList.replaceAll("\\s+", "").toUpperCase(Locale.ROOT);
+        for (int i = 0; i < compact.length(); i += 2) {
+            moves.add(compact.substring(i, i + 2));
+        }
+    }
+
+    private void play(String[] words) {
+        if (words.length != 2) {
+            throw new IllegalArgumentException("usage: play <move>");
+        }
+        Move move = Move.readFormattedMove(words[1]);
+        int colour = board.getPlayerToMove();
+        if (move.getRow() < 0 || board.isTerminal()
+                || (board.legalMoves(colour) & (1L << Bitboards.square(move.getRow(), move.getCol()))) == 0) {
+            throw new IllegalArgumentException("illegal move " + words[1]);
+        }
+        Board next = new Board(board);
+        next.makeMove(move.getRow(), move.getCol(), colour);
+        // the reply pondered on keeps being searched, for the go that follows
+        if ((ponderer == null || !ponderer.expects(next)) && !stopSearch()) {
+            return;
+        }
+        board = next;
+        moves.add(move.formattedIndex());
+    }
+
+    private void undo() {
+        if (moves.isEmpty()) {
+            throw new IllegalArgumentException("no move to undo");
+        }
+        if (!stopSearch()) {
+            return;
+        }
+        moves.remove(moves.size() - 1);
+        board = Board.fromMoveList(String.join("", moves));
+    }
+
+    /**
+     * go [time milliseconds] [depth n]: searches within the given time (the time setting by default) and to at most
+     * the given depth (the depth setting by default). Without options, a go on the position pondered carries on with
+     * the pondering search.
+     */
+    private void go(String[] words) {
+        if (words.length == 1 && ponderer != null && ponderer.expects(board)) {
+            respond();
+            return;
+        }
+        long millis = timeBudget;
+        int maxDepth = depth;
+        for (int i = 1; i < words.length; ++i) {
+            if (i + 1 == words.length) {
+                throw new IllegalArgumentException("usage: go [time milliseconds] [depth n]");
+            }
+            switch (words[i]) {
+                case "time" -> millis = parsePositive(words[++i]);
+                case "depth" -> maxDepth = (int) Math.min(MAX_DEPTH, parsePositive(words[++i]));
+                default -> throw new IllegalArgumentException("unknown option " + words[i]);
+            }
+        }
+        startSearch(Mode.GO, millis, maxDepth);
+    }
+
+    private void startSearch(Mode mode, long millis, int maxDepth) {
+        if (board.isTerminal()) {
+            throw new IllegalArgumentException("the game is over");
+        }
+        if (!stopSearch()) {
+            return;
+        }
+        int colour = board.getPlayerToMove();
+        boolean kept = maxDepth == depth;
+        Player player = kept ? player(colour) : createPlayer(maxDepth, colour);
+        player.setTimeBudget(millis);
+        player.setIterationListener(mode == Mode.ANALYZE ? (iterationDepth, bestMove, nodes) ->
+                output.accept(String.format(Locale.ROOT, "info depth %d move %s value %d nodes %d", iterationDepth,
+                        bestMove.formattedIndex(), colour * bestMove.getValue(), nodes)) : null);
+        player.setStopped(false);
+        Board position = new Board(board);
+        searching = player;
+        search = executor.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                Move move = player.minimax(position);
+                output.accept(bestMoveReply(move, colour, player, System.nanoTime() - start));
+            } catch (RuntimeException e) {
+                output.accept("error search failed: " + e);
+            } finally {
+                // a player made for a single search lets its threads go
+                if (!kept) {
+                    player.setThreads(1);
+                }
+            }
+        });
+    }
+
+    /**
+     * Finishes the pondering search of the position, which the opponent's reply has just reached, as the search of go.
+     */
+    private void respond() {
+        Ponderer hit = ponderer;
+        ponderer = null;
+        int colour = board.getPlayerToMove();
+        Player player = player(colour);
+        Board position = new Board(board);
+        searching = player;
+        search = executor.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                Move move = hit.respond(position);
+                output.accept(bestMoveReply(move, colour, player, System.nanoTime() - start));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                output.accept("error search failed: " + e);
+            }
+        });
+    }
+
+    /**
+     * ponder: guesses the opponent's reply to the move just played and searches the position after it, with the
+     * player of the side that moved, until the position changes in any other way (see Ponderer).
+     */
+    private void ponder() {
+        if (!stopSearch()) {
+            return;
+        }
+        Player player = player(-board.getPlayerToMove());
+        player.setTimeBudget(timeBudget);
+        player.setIterationListener(null);
+        ponderer = new Ponderer(player, executor);
+        ponderer.start(board);
+    }
+
+    /**
+     * @return The reply of a search: "bestmove", the move, its value for the player to move, then "nodes" and "time"
+     * (in milliseconds).
+     */
+    private static String bestMoveReply(Move move, int colour, Player player, long nanos) {
+        if (move == null || move.getRow() < 0) {
+            return "bestmove none";
+        }
+        return String.format(Locale.ROOT, "bestmove %s value %d nodes %d time %d", move.formattedIndex(),
+                colour * move.getValue(), player.getNodeCount(), nanos / 1_000_000);
+    }
+
+    /**
+     * Stops the search that is running (or the pondering), if any, so that the position can be changed or another
+     * search started. It does not wait for the search to reply and finish: the command is held back until it has (see
+     * run), and should return at once, without changing anything.
+     * @return True if no search is running, false if one was stopped and has yet to unwind.
+     */
+    private boolean stopSearch() {
+        if (ponderer == null && (search == null || search.isDone())) {
+            search = null;
+            searching = null;
+            return true;
+        }
+        stopping = true;
+        unwind();
+        return false;
+    }
+
+    /**
+     * Stops the search and the pondering, and waits for them on a thread of the executor rather than on the one
+     * handling the commands. Once both have finished, the commands held back meanwhile are handed to resume.
+     */
+    private void unwind() {
+        Ponderer stopped = ponderer;
+        Future<?> running = search;
+        if (searching != null) {
+            searching.setStopped(true);
+        }
+        ponderer = null;
+        search = null;
+        searching = null;
+        executor.execute(() -> {
+            if (stopped != null) {
+                stopped.cancel();
+            }
+            if (running != null) {
+                try {
+                    running.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    output.accept("error search failed: " + e.getCause());
+                }
+            }
+            unwound();
+        });
+    }
+
+    private void unwound() {
+        synchronized (this) {
+            stopping = false;
+            if (closed || waiting.isEmpty()) {
+                return;
+            }
+        }
+        resume.accept(this);
+    }
+
+    /**
+     * set &lt;name&gt; &lt;value&gt;: changes a setting of the players. The settings are depth, time (the budget of go
+     * in milliseconds), threads, endgame (the number of empty squares the players solve from, 0 to never solve),
+     * table (the size of the transposition table in megabytes), and pattern (on to evaluate with the default
+     * PatternEvaluator, off to use Board.evaluate, which also turns ProbCut off as its parameters no longer fit).
+     * Both table and pattern leave the shared table, if the session had one, for a table of its own.
+     */
+    private void set(String[] words) {
+        if (words.length != 3) {
+            throw new IllegalArgumentException("usage: set <name> <value>");
+        }
+        if (!stopSearch()) {
+            return;
+        }
+        String value = words[2];
+        switch (words[1].toLowerCase(Locale.ROOT)) {
+            case "depth" -> depth = (int) Math.min(MAX_DEPTH, parsePositive(value));
+            case "time" -> timeBudget = parsePositive(value);
+            case "threads" -> threads = (int) parsePositive(value);
+            case "endgame" -> endgameThreshold = (int) Math.min(64, Long.parseLong(value));
+            case "table" -> {
+                tableMegabytes = (int) parsePositive(value);
+                table = null;
+                sharedTable = null;
+            }
+            case "pattern" -> {
+                boolean on = value.equalsIgnoreCase("on");
+                if (!on && !value.equalsIgnoreCase("off")) {
+                    throw new IllegalArgumentException("usage: set pattern on|off");
+                }
+                if (on != (patternEvaluator != null)) {
+                    patternEvaluator = on ? new PatternEvaluator() : null;
+                    probCut = null;
+                    // the values stored no longer compare with the new ones
+                    table = null;
+                    sharedTable = null;
+                }
+            }
+            default -> throw new IllegalArgumentException("unknown setting " + words[1]);
+        }
+        for (int i = 0; i < players.length; ++i) {
+            if (players[i] != null) {
+                players[i].setThreads(1);
+                players[i] = null;
+            }
+        }
+    }
+
+    private void show() {
+        long white = board.getDisks(Board.WHITE);
+        long black = board.getDisks(Board.BLACK);
+        output.accept("  A B C D E F G H");
+        for (int row = 0; row < 8; ++row) {
+            StringBuilder line = new StringBuilder().append(row + 1);
+            for (int col = 0; col < 8; ++col) {
+                long bit = 1L << Bitboards.square(row, col);
+                line.append(' ').append((white & bit) != 0 ? 'W' : (black & bit) != 0 ? 'B' : '-');
+            }
+            output.accept(line.toString());
+        }
+        int colour = board.getPlayerToMove();
+        output.accept("black " + board.getScore(Board.BLACK) + " white " + board.getScore(Board.WHITE)
+                + (board.isTerminal() ? " game over" : colour == Board.BLACK ? " black to move" : " white to move")
+                + " moves " + (moves.isEmpty() ? "-" : String.join("", moves)));
+    }
+
+    /**
+     * @return The player of the colour with the current settings, which keeps its killer moves and history from one
+     * search to the next.
+     */
+    private Player player(int colour) {
+        int index = colour == Board.WHITE ? 0 : 1;
+        if (players[index] == null) {
+            players[index] = createPlayer(depth, colour);
+        }
+        return players[index];
+    }
+
+    private Player createPlayer(int maxDepth, int colour) {
+        if (table == null) {
+            table = sharedTable != null ? sharedTable
+                    : new TranspositionTable(tableMegabytes, TranspositionTable.ReplacementPolicy.DEPTH_PREFERRED);
+        }
+        Player player = new Player(maxDepth, colour, table);
+        player.setThreads(threads);
+        player.setEndgameThreshold(endgameThreshold);
+        player.setPatternEvaluator(patternEvaluator);
+        player.setPrincipalVariationSearch(true);
+        player.setProbCut(probCut);
+        return player;
+    }
+
+    private static long parsePositive(String value) {
+        long number;
+        try {
+            number = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a number: " + value);
+        }
+        if (number <= 0) {
+            throw new IllegalArgumentException("not a positive number: " + value);
+        }
+        return number;
+    }
+}
@@ -0,0 +1,354 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Fits the weights of Board.evaluate (see EvaluationWeights) to the results of played games, the way Texel tuning
+ * does: every position is labelled with the result of its game, and the weights are chosen so that a logistic function
+ * of the evaluation predicts that result as closely as possible (in the least squares sense). <br>
+ * The positions are read from a GameArchive, one game at a time, and only their terms are kept: the 5 terms of the
+ * evaluation that have a weight, which all fit in a byte, and the result, each in an array of bytes of its own. A
+ * position therefore takes 6 bytes, and 50 million of them take 300 MB. Finished positions are left out, as their
+ * value (10000 to the winner) does not depend on the weights, and so are the positions of one game in 10, which are
+ * kept aside to check the fit on positions it has not seen. <br>
+ * First the scale of the logistic function is fitted to the starting weights, then the weights are fitted with the
+ * scale fixed, by the Levenberg-Marquardt method: the evaluation is linear in the weights, so a few dozen steps are
+ * enough. Every step is one pass over the positions, split across every core in chunks, on a ForkJoinPool as in
+ * Perft. The weights are kept where the heuristic function stays below the value of a finished game (see
+ * EvaluationWeights.reach): a step that would leave that region is shortened to stay inside it. <br>
+ * Every square of Board but the corners is a danger square, so the DANGER term of a position is always its CORNER term
+ * less its PIECE term, and no set of positions can tell the three weights apart: only CORNER + DANGER and PIECE -
+ * DANGER count. The DANGER weight is therefore kept as it starts, and the others are fitted around it. <br>
+ * Usage:
+ * <pre>
+ *  java EvaluationTuner archive output [--skip n] [--iterations n] [--threads n] [--weights file]
+ * </pre>
+ * Options:
+ * <ul>
+ *     <li>--skip: the number of moves into every game before positions are taken, 0 by default. The first moves of
+ *     most games are the same few openings.</li>
+ *     <li>--iterations: the most steps the fit takes, 50 by default.</li>
+ *     <li>--threads: the number of threads, every core by default.</li>
+ *     <li>--weights: the weights to start from, the defaults if not given.</li>
+ * </ul>
+ * The weights are written to the output file, for Board to load at startup (see EvaluationWeights).
+ */
+public class EvaluationTuner
+{
+    private static final int VALIDATION_ONE_IN = 10;    // the games whose positions are only used to check the fit
+    private static final int CHUNK_SIZE = 1 << 18;      // the number of positions each task goes through
+    private static final double MIN_IMPROVEMENT = 1e-10;    // the fit stops once a step gains less than this
+
+    // the weight left out of the fit, as its term is a combination of others (see the class comment)
+    private static final int FIXED = EvaluationWeights.DANGER;
+
+    // what a pass over the positions adds up: the error, its gradient and the Gauss-Newton approximation of its Hessian
+    private static final int ERROR = 0;
+    private static final int GRADIENT = 1;
+    private static final int HESSIAN = GRADIENT + EvaluationWeights.COUNT;
+    private static final int SUMS = HESSIAN + EvaluationWeights.COUNT * EvaluationWeights.COUNT;
+
+    /**
+     * Labelled positions, as a structure of arrays of bytes.
+     */
+    private static final class Samples
+    {
+        private final byte[][] features = new byte[EvaluationWeights.COUNT][1 << 16];
+        private byte[] results = new byte[1 << 16];     // 0 if black won, 1 for a draw and 2 if white won
+        private int size;
+
+        private void add(int[] terms, int result) {
+            if (size == results.length) {
+                // growing by half keeps the copy, which holds both arrays for a moment, within half again the size
+                int capacity = size + (size >> 1);
+                for (int i = 0; i < EvaluationWeights.COUNT; ++i) {
+                    features[i] = Arrays.copyOf(features[i], capacity);
+                }
+                results = Arrays.copyOf(results, capacity);
+            }
+            for (int i = 0; i < EvaluationWeights.COUNT; ++i) {
+                features[i][size] = (byte) terms[i];
+            }
+            results[size++] = (byte) result;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java EvaluationTuner archive output [--skip n] [--iterations n] [--threads n] "
+                    + "[--weights file]");
+            System.exit(2);
+        }
+        GameArchive archive = GameArchive.open(Path.of(args[0]));
+        Path output = Path.of(args[1]);
+        int skip = 0;
+        int iterations = 50;
+        int threads = Runtime.getRuntime().availableProcessors();
+        EvaluationWeights start = new EvaluationWeights();
+        for (int i = 2; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--skip" -> skip = Integer.parseInt(args[++i]);
+                case "--iterations" -> iterations = Integer.parseInt(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--weights" -> start = EvaluationWeights.load(Path.of(args[++i]));
+                default -> throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+        }
+
+        long loadStart = System.nanoTime();
+        Samples training = new Samples();
+        Samples validation = new Samples();
+        int games = load(archive, skip, training, validation);
+        System.out.printf(Locale.ROOT, "Read %d positions (and %d to validate with) from %d games in %.1f s%n",
+                training.size, validation.size, games, (System.nanoTime() - loadStart) / 1e9);
+        if (training.size == 0) {
+            System.err.println("No positions to fit to");
+            System.exit(1);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        double[] weights = new double[EvaluationWeights.COUNT];
+        for (int i = 0; i < EvaluationWeights.COUNT; ++i) {
+            weights[i] = start.get(i);
+        }
+        long fitStart = System.nanoTime();
+        double scale = fitScale(pool, training, weights);
+        System.out.printf(Locale.ROOT, "Scale %.6g, error %.6f (validation %.6f) with %s%n", scale,
+                error(pool, training, weights, scale), error(pool, validation, weights, scale), start);
+
+        fitWeights(pool, training, weights, scale, iterations);
+        int[] rounded = new int[EvaluationWeights.COUNT];
+        double[] roundedWeights = new double[EvaluationWeights.COUNT];
+        for (int i = 0; i < EvaluationWeights.COUNT; ++i) {
+            roundedWeights[i] = Math.round(weights[i]);
+        }
+        // rounding can take weights just below the limit over it, whereas rounding towards 0 never takes them further
+        boolean truncate = EvaluationWeights.reach(roundedWeights) >= EvaluationWeights.WIN;
+        for (int i = 0; i < EvaluationWeights.COUNT; ++i) {
+            rounded[i] = truncate ? (int) weights[i] : (int) roundedWeights[i];
+            roundedWeights[i] = rounded[i];
+        }
+        EvaluationWeights fitted = new EvaluationWeights(rounded);
+        System.out.printf(Locale.ROOT, "Error %.6f (validation %.6f) with %s, fitted in %.1f s on %d threads%n",
+                error(pool, training, roundedWeights, scale), error(pool, validation, roundedWeights, scale), fitted,
+                (System.nanoTime() - fitStart) / 1e9, threads);
+        fitted.save(output);
+        System.out.println("Wrote " + output);
+        pool.shutdown();
+    }
+
+    /**
+     * Reads the terms of every position of every valid game, from skip moves in, labelled with the result of the
+     * game. The positions of one game in VALIDATION_ONE_IN go to validation.
+     * @return The number of valid games read.
+     */
+    private static int load(GameArchive archive, int skip, Samples training, Samples validation) {
+        int[] games = new int[1];
+        int[] terms = new int[EvaluationWeights.COUNT];
+        archive.forEach(game -> {
+            if (!game.isValid()) {
+                return;
+            }
+            ++games[0];
+            Samples samples = game.getNumber() % VALIDATION_ONE_IN == VALIDATION_ONE_IN - 1 ? validation : training;
+            int result = Integer.signum(game.getScore(Board.WHITE) - game.getScore(Board.BLACK)) + 1;
+            for (int ply = skip; ply <= game.getPlies(); ++ply) {
+                long white = game.getDisks(ply, Board.WHITE);
+                long black = game.getDisks(ply, Board.BLACK);
+                boolean whiteCanPlay = Bitboards.legalMoves(white, black) != 0;
+                boolean blackCanPlay = Bitboards.legalMoves(black, white) != 0;
+                // the same test for a finished game as Board.evaluate
+                if (white == 0 || black == 0 || (!whiteCanPlay && !blackCanPlay)) {
+                    continue;
+                }
+                Board.positionalFeatures(white, black, terms);
+                terms[EvaluationWeights.PASS] = !blackCanPlay ? 1 : !whiteCanPlay ? -1 : 0;
+                samples.add(terms, result);
+            }
+        });
+        return games[0];
+    }
+
+    /**
+     * Adds up the error of the prediction over every position, and if asked, its derivatives in the weights, a chunk
+     * of positions per task.
+     */
+    private static double[] pass(ForkJoinPool pool, Samples samples, double[] weights, double scale,
+                                 boolean derivatives) {
+        List<ForkJoinTask<double[]>> tasks = new ArrayList<>();
+        for (int from = 0; from < samples.size; from += CHUNK_SIZE) {
+            int start = from;
+            int end = Math.min(samples.size, from + CHUNK_SIZE);
+            tasks.add(pool.submit(() -> sums(samples, weights, scale, derivatives, start, end)));
+        }
+        double[] sums = new double[SUMS];
+        for (ForkJoinTask<double[]> task : tasks) {
+            double[] chunk = task.join();
+            for (int i = 0; i < SUMS; ++i) {
+                sums[i] += chunk[i];
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * pass, over a range of positions.
+     */
+    private static double[] sums(Samples samples, double[] weights, double scale, boolean derivatives, int from,
+                                 int to) {
+        double[] sums = new double[SUMS];
+        double[] terms = new double[EvaluationWeights.COUNT];
+        for (int i = from; i < to; ++i) {
+            double evaluation = 0;
+            for (int j = 0; j < EvaluationWeights.COUNT; ++j) {
+                terms[j] = samples.features[j][i];
+                evaluation += weights[j] * terms[j];
+            }
+            double prediction = 1 / (1 + Math.exp(-scale * evaluation));
+            double residual = prediction - 0.5 * samples.results[i];
+            sums[ERROR] += residual * residual;
+            if (!derivatives) {
+                continue;
+            }
+            // the derivative of the prediction in the evaluation
+            double slope = scale * prediction * (1 - prediction);
+            for (int j = 0; j < EvaluationWeights.COUNT; ++j) {
+                sums[GRADIENT + j] += residual * slope * terms[j];
+                for (int k = 0; k <= j; ++k) {
+                    sums[HESSIAN + j * EvaluationWeights.COUNT + k] += slope * slope * terms[j] * terms[k];
+                }
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * @return The mean squared error of the prediction over the positions.
+     */
+    private static double error(ForkJoinPool pool, Samples samples, double[] weights, double scale) {
+        return samples.size > 0 ? pass(pool, samples, weights, scale, false)[ERROR] / samples.size : 0;
+    }
+
+    /**
+     * Finds the scale of the logistic function that fits the given weights best, by a golden section search on its
+     * logarithm.
+     */
+    private static double fitScale(ForkJoinPool pool, Samples samples, double[] weights) {
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        double low = Math.log(1e-6);
+        double high = Math.log(1e-1);
+        double left = high - ratio * (high - low);
+        double right = low + ratio * (high - low);
+        double leftError = error(pool, samples, weights, Math.exp(left));
+        double rightError = error(pool, samples, weights, Math.exp(right));
+        while (high - low > 1e-4) {
+            if (leftError < rightError) {
+                high = right;
+                right = left;
+                rightError = leftError;
+                left = high - ratio * (high - low);
+                leftError = error(pool, samples, weights, Math.exp(left));
+            } else {
+                low = left;
+                left = right;
+                leftError = rightError;
+                right = low + ratio * (high - low);
+                rightError = error(pool, samples, weights, Math.exp(right));
+            }
+        }
+        return Math.exp((low + high) / 2);
+    }
+
+    /**
+     * Fits the weights by the Levenberg-Marquardt method, in place.
+     */
+    private static void fitWeights(ForkJoinPool pool, Samples samples, double[] weights, double scale,
+                                   int iterations) {
+        int count = EvaluationWeights.COUNT;
+        double damping = 1e-3;
+        double[] sums = pass(pool, samples, weights, scale, true);
+        for (int iteration = 0; iteration < iterations; ++iteration) {
+            /* (H + damping * diag(H)) step = -gradient, the Hessian being filled in from its lower half. The row and column
+             * of the fixed weight are those of the identity, with nothing on the right, so that its step is 0. */
+            double[][] system = new double[count][count + 1];
+            for (int j = 0; j < count; ++j) {
+                if (j == FIXED) {
+                    system[j][j] = 1;
+                    continue;
+                }
+                for (int k = 0; k < count; ++k) {
+                    system[j][k] = k == FIXED ? 0 : sums[HESSIAN + Math.max(j, k) * count + Math.min(j, k)];
+                }
+                // a term that no position has would leave the system singular
+                system[j][j] = system[j][j] * (1 + damping) + 1e-12;
+                system[j][count] = -sums[GRADIENT + j];
+            }
+            double[] step = solve(system);
+            double[] candidate = new double[count];
+            // the weights start within the limit, so halving the step often enough always brings it back within
+            for (double fraction = 1; fraction > 0; fraction /= 2) {
+                for (int j = 0; j < count; ++j) {
+                    candidate[j] = weights[j] + fraction * step[j];
+                }
+                if (EvaluationWeights.reach(candidate) < EvaluationWeights.WIN) {
+                    break;
+                }
+            }
+            double[] candidateSums = pass(pool, samples, candidate, scale, true);
+            double gain = (sums[ERROR] - candidateSums[ERROR]) / samples.size;
+            if (gain > 0) {
+                System.arraycopy(candidate, 0, weights, 0, count);
+                sums = candidateSums;
+                damping /= 3;
+                if (gain < MIN_IMPROVEMENT) {
+                    break;
+                }
+            } else {
+                damping *= 4;
+                if (damping > 1e12) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Solves a linear system by Gaussian elimination with partial pivoting.
+     * @param system The augmented matrix of the system, n rows of n + 1 numbers, which is overwritten.
+     * @return The solution.
+     */
+    private static double[] solve(double[][] system) {
+        int n = system.length;
+        for (int column = 0; column < n; ++column) {
+            int pivot = column;
+            for (int row = column + 1; row < n; ++row) {
+                if (Math.abs(system[row][column]) > Math.abs(system[pivot][column])) {
+                    pivot = row;
+                }
+            }
+            double[] swap = system[column];
+            system[column] = system[pivot];
+            system[pivot] = swap;
+            for (int row = column + 1; row < n; ++row) {
+                double factor = system[row][column] / system[column][column];
+                for (int k = column; k <= n; ++k) {
+                    system[row][k] -= factor * system[column][k];
+                }
+            }
+        }
+        double[] solution = new double[n];
+        for (int row = n - 1; row >= 0; --row) {
+            double value = system[row][n];
+            for (int k = row + 1; k < n; ++k) {
+                value -= system[row][k] * solution[k];
+            }
+            solution[row] = value / system[row][row];
+        }
+        return solution;
+    }
+}
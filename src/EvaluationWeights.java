@@ -0,0 +1,194 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The weights of the terms of Board.evaluate, which EvaluationTuner fits to played games. Board reads them once, when
+ * it is first used: from the file named by the system property reversi.weights if it is set (for example
+ * "java -Dreversi.weights=board.weights Reversi"), and the defaults otherwise. The file is:
+ * <pre>
+ *  header  int magic ("RVBW"), int version, int number of weights
+ *  body    int weight, for every term in the order of the indices below
+ * </pre>
+ * A finished game is always worth 10000 to the winner (WIN), which is not a weight: the endgame solver, the pattern
+ * evaluator and the ProbCut calibration all take it as the scale of every value. So that no position that is not over
+ * ranks with a finished one, weights whose heuristic function could reach it are rejected (see reach).
+ */
+public final class EvaluationWeights
+{
+    /** The weight of the difference in corners. */
+    public static final int CORNER = 0;
+    /** The weight of the difference in dangerous squares (see Board.indexIsDangerous), taken away from their owner. */
+    public static final int DANGER = 1;
+    /** The weight of the difference in edge squares. */
+    public static final int EDGE = 2;
+    /** The weight of the difference in disks. */
+    public static final int PIECE = 3;
+    /** What a player gets when their opponent has to pass. */
+    public static final int PASS = 4;
+    /** The number of weights. */
+    public static final int COUNT = 5;
+
+    /** What a finished game is worth to the winner, which the heuristic function of a game that is not over stays below. */
+    public static final int WIN = 10000;
+
+    /** The system property naming the file of weights that Board uses. */
+    public static final String PROPERTY = "reversi.weights";
+
+    private static final int[] DEFAULTS = {200, 85, 60, 10, 3000};
+
+    /* the squares of the board by the terms a disk on them counts towards (see Board.squaresMatching): corners, edge
+     * squares, which are all dangerous as well, and the inner squares, which Board.indexIsDangerous also counts as
+     * dangerous */
+    private static final int CORNER_SQUARES = 4;
+    private static final int EDGE_SQUARES = 24;
+    private static final int INNER_SQUARES = 36;
+
+    private static final int MAGIC = 0x52564257;    // "RVBW"
+    private static final int VERSION = 1;
+
+    private final int[] weights;
+
+    /**
+     * Creates the default weights, those Board.evaluate was written with.
+     */
+    public EvaluationWeights()
+    {
+        this(DEFAULTS);
+    }
+
+    /**
+     * @param weights A weight for every term, in the order of the indices.
+     * @throws IllegalArgumentException If there is not a weight for every term, or the weights could give a position
+     * that is not over a value of WIN or more.
+     */
+    public EvaluationWeights(int[] weights)
+    {
+        if (weights.length != COUNT) {
+            throw new IllegalArgumentException("Expected " + COUNT + " weights, got " + weights.length);
+        }
+        double[] values = new double[COUNT];
+        for (int i = 0; i < COUNT; ++i) {
+            values[i] = weights[i];
+        }
+        if (reach(values) >= WIN) {
+            throw new IllegalArgumentException("The weights " + Arrays.toString(weights) + " can evaluate a position at "
+                    + (long) reach(values) + ", as much as a finished game");
+        }
+        this.weights = weights.clone();
+    }
+
+    /**
+     * @param weights A weight for every term, in the order of the indices.
+     * @return The largest magnitude of the heuristic function with these weights, in a position that is not over,
+     * which has to stay below WIN: that of a board where every square holds a disk of the colour it counts for most
+     * (see Board.positionalScore), and the opponent has to pass.
+     */
+    static double reach(double[] weights) {
+        double piece = weights[PIECE];
+        return CORNER_SQUARES * Math.abs(weights[CORNER] + piece)
+                + EDGE_SQUARES * Math.abs(weights[EDGE] - weights[DANGER] + piece)
+                + INNER_SQUARES * Math.abs(piece - weights[DANGER])
+                + Math.abs(weights[PASS]);
+    }
+
+    /**
+     * @param term The index of a term, such as CORNER.
+     * @return Its weight.
+     */
+    public int get(int term) {
+        return weights[term];
+    }
+
+    /**
+     * Loads the weights written by save.
+     * @param path The file to read.
+     * @return The weights of the file.
+     * @throws IOException If the file cannot be read, or does not hold weights for these terms that stay below WIN.
+     */
+    public static EvaluationWeights load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != COUNT) {
+                throw new IOException("Not a weights file for Board.evaluate: " + path);
+            }
+            int[] weights = new int[COUNT];
+            for (int i = 0; i < COUNT; ++i) {
+                weights[i] = in.readInt();
+            }
+            try {
+                return new EvaluationWeights(weights);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage() + ": " + path, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the weights to a file, in the format load reads.
+     * @param path The file to write, which is replaced if it exists.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(COUNT);
+            for (int weight : weights) {
+                out.writeInt(weight);
+            }
+        }
+    }
+
+    /**
+     * @return The weights Board uses: those of the file named by PROPERTY, or the defaults if it is not set.
+     * @throws UncheckedIOException If the file cannot be loaded. Board cannot do without weights, and going on with
+     * the defaults would silently play with other weights than the ones asked for.
+     */
+    static EvaluationWeights fromProperty() {
+        String path = System.getProperty(PROPERTY);
+        if (path == null) {
+            return new EvaluationWeights();
+        }
+        try {
+            return load(Path.of(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return A hash of the weights, which tells them apart from those of a PatternEvaluator as well (see
+     * PatternEvaluator.fingerprint).
+     */
+    public long fingerprint() {
+        long hash = MAGIC;
+        for (int weight : weights) {
+            hash = hash * 0x9e3779b97f4a7c15L + weight;
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "corner " + weights[CORNER] + ", danger " + weights[DANGER] + ", edge " + weights[EDGE] + ", piece "
+                + weights[PIECE] + ", pass " + weights[PASS];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof EvaluationWeights other)) return false;
+        return Arrays.equals(weights, other.weights);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(weights);
+    }
+}
@@ -0,0 +1,374 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * A file of played games, memory-mapped and replayed one game at a time, so that an archive of any size can be gone
+ * through without ever holding more than the game being replayed. Two formats are read:
+ * <ul>
+ *     <li>WTHOR databases (files ending in .wtb): a 16-byte header, with the number of games as a little-endian int at
+ *     offset 4, followed by a 68-byte record per game, whose last 60 bytes are the moves, each written as 10 * row +
+ *     column (both from 1, so 11 is A1 and 88 is H8), and 0 once the game is over.</li>
+ *     <li>Move lists (any other file): text with one game per line in the notation of Move.formattedIndex, as read by
+ *     BookBuilder (e.g. "F5 D6 C3" or "F5D6C3"). Empty lines and lines starting with # are skipped.</li>
+ * </ul>
+ * In both, a player who has no move passes, as in Board.fromMoveList, so a pass is never written. Games are numbered
+ * from 0 in the order of the file, and found again by their offset in it (see read). <br>
+ * Files larger than a single mapping can be are mapped as consecutive windows, each overlapping the next by more than
+ * the longest game, so that every game lies entirely within the window it starts in.
+ */
+public class GameArchive
+{
+    /** The most moves a game can have. */
+    public static final int MAX_PLIES = 60;
+
+    private static final int WTHOR_HEADER_BYTES = 16;
+    private static final int WTHOR_RECORD_BYTES = 68;
+    private static final int WTHOR_MOVES_OFFSET = 8;
+
+    // the longest line of a move list that is read as a game, far more than the 60 moves of 3 characters it needs
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    // the windows start every WINDOW_BYTES bytes, and reach OVERLAP_BYTES into the next one
+    private static final int WINDOW_SHIFT = 30;
+    private static final long WINDOW_BYTES = 1L << WINDOW_SHIFT;
+    private static final int OVERLAP_BYTES = 1 << 16;
+
+    private final Path path;
+    private final boolean wthor;
+    private final long length;
+    private final MappedByteBuffer[] windows;
+
+    /**
+     * A game, as replayed from the archive: every position it went through, from the start position to the final
+     * one. The same instance is filled again for every game of forEach, so anything kept has to be copied out of it.
+     */
+    public static final class Game
+    {
+        private final long[] blackDisks = new long[MAX_PLIES + 1];
+        private final long[] whiteDisks = new long[MAX_PLIES + 1];
+        private final int[] playersToMove = new int[MAX_PLIES + 1];
+        private final int[] squares = new int[MAX_PLIES];
+        private int number;
+        private long offset;
+        private int plies;
+        private boolean valid;
+
+        /**
+         * @return The number of the game in its archive, from 0.
+         */
+        public int getNumber()
+        {
+            return this.number;
+        }
+
+        /**
+         * @return The offset of the game in its archive, from which read finds it again.
+         */
+        public long getOffset()
+        {
+            return this.offset;
+        }
+
+        /**
+         * @return The number of moves of the game (passes are not counted). For a game that is not valid, the number
+         * of moves before the first one that could not be played.
+         */
+        public int getPlies()
+        {
+            return this.plies;
+        }
+
+        /**
+         * @return False if the game has a move that cannot be read or is not legal, in which case only the positions
+         * before it are known.
+         */
+        public boolean isValid()
+        {
+            return this.valid;
+        }
+
+        /**
+         * @param ply The number of moves made, from 0 (the start position) to getPlies (the final position).
+         * @param playerColour A colour.
+         * @return The disks of that colour in the position (see Bitboards for the square numbering).
+         */
+        public long getDisks(int ply, int playerColour) {
+            return playerColour == Board.WHITE ? whiteDisks[ply] : blackDisks[ply];
+        }
+
+        /**
+         * @param ply The number of moves made, from 0 to getPlies.
+         * @return The colour of the player to move in the position. In the final position, the player who would move
+         * next if the game went on (see Board.getPlayerToMove).
+         */
+        public int getPlayerToMove(int ply) {
+            return playersToMove[ply];
+        }
+
+        /**
+         * @param ply The number of moves made before it, from 0 to getPlies - 1.
+         * @return The square of the move (see Bitboards for the square numbering).
+         */
+        public int getSquare(int ply) {
+            return squares[ply];
+        }
+
+        /**
+         * @return The number of disks of the given colour at the end of the game. Empty squares are not counted.
+         */
+        public int getScore(int playerColour) {
+            return Long.bitCount(getDisks(plies, playerColour));
+        }
+
+        /**
+         * @return The moves of the game in the notation of Move.formattedIndex, e.g. "F5D6C3".
+         */
+        public String toMoveList() {
+            StringBuilder moves = new StringBuilder(2 * plies);
+            for (int ply = 0; ply < plies; ++ply) {
+                moves.append(new Move(squares[ply] / 8, squares[ply] % 8).formattedIndex());
+            }
+            return moves.toString();
+        }
+
+        /**
+         * Replays the first moves of squares from the start position.
+         * @param moves The number of moves read into squares, or -1 - that number if the move after them could not
+         * be read.
+         */
+        private void replay(int moves) {
+            boolean readable = moves >= 0;
+            int count = readable ? moves : -1 - moves;
+            long black = (1L << Bitboards.square(3, 4)) | (1L << Bitboards.square(4, 3));
+            long white = (1L << Bitboards.square(3, 3)) | (1L << Bitboards.square(4, 4));
+            int colour = Board.BLACK;
+            valid = readable;
+            plies = count;
+            for (int ply = 0; ply <= count; ++ply) {
+                long player = colour == Board.BLACK ? black : white;
+                long opponent = colour == Board.BLACK ? white : black;
+                // a player without a move passes
+                if (Bitboards.legalMoves(player, opponent) == 0 && Bitboards.legalMoves(opponent, player) != 0) {
+                    colour = -colour;
+                    long swap = player;
+                    player = opponent;
+                    opponent = swap;
+                }
+                blackDisks[ply] = black;
+                whiteDisks[ply] = white;
+                playersToMove[ply] = colour;
+                if (ply == count) {
+                    break;
+                }
+
+                int square = squares[ply];
+                long move = 1L << square;
+                long flips = ((player | opponent) & move) == 0 ? Bitboards.flips(square, player, opponent) : 0;
+                if (flips == 0) {
+                    valid = false;
+                    plies = ply;
+                    return;
+                }
+                player ^= flips | move;
+                opponent ^= flips;
+                black = colour == Board.BLACK ? player : opponent;
+                white = colour == Board.BLACK ? opponent : player;
+                colour = -colour;
+            }
+        }
+    }
+
+    private GameArchive(Path path, boolean wthor, long length, MappedByteBuffer[] windows)
+    {
+        this.path = path;
+        this.wthor = wthor;
+        this.length = length;
+        this.windows = windows;
+    }
+
+    /**
+     * Maps an archive into memory. Its format is told by its name: WTHOR if it ends in .wtb, move lists otherwise.
+     * @param path The file.
+     * @return The archive.
+     * @throws IOException If the file cannot be read, or is a WTHOR file with a header that does not match its size.
+     */
+    public static GameArchive open(Path path) throws IOException {
+        boolean wthor = path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".wtb");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            MappedByteBuffer[] windows = new MappedByteBuffer[(int) ((length + WINDOW_BYTES - 1) >>> WINDOW_SHIFT)];
+            for (int i = 0; i < windows.length; ++i) {
+                long start = (long) i << WINDOW_SHIFT;
+                // the mappings stay valid after the channel is closed
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(length - start, WINDOW_BYTES + OVERLAP_BYTES));
+                windows[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            GameArchive archive = new GameArchive(path, wthor, length, windows);
+            if (wthor && (length < WTHOR_HEADER_BYTES
+                    || length != WTHOR_HEADER_BYTES + archive.wthorGames() * WTHOR_RECORD_BYTES)) {
+                throw new IOException("Not a WTHOR database: " + path);
+            }
+            return archive;
+        }
+    }
+
+    /**
+     * @return The file the archive was opened from.
+     */
+    public Path getPath()
+    {
+        return this.path;
+    }
+
+    /**
+     * @return The size of the file, in bytes.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Replays every game of the archive in turn, in the order of the file. Games that are not valid are passed on as
+     * well, for the action to skip or report.
+     * @param action What to do with every game. It is given the same Game every time, filled with the next game.
+     * @return The number of games.
+     */
+    public int forEach(Consumer<Game> action) {
+        Game game = new Game();
+        int number = 0;
+        if (wthor) {
+            for (long games = wthorGames(); number < games; ++number) {
+                read(number, WTHOR_HEADER_BYTES + (long) number * WTHOR_RECORD_BYTES, game);
+                action.accept(game);
+            }
+            return number;
+        }
+
+        long offset = 0;
+        while (offset < length) {
+            MappedByteBuffer window = windows[(int) (offset >>> WINDOW_SHIFT)];
+            int position = (int) (offset & (WINDOW_BYTES - 1));
+            int end = lineEnd(window, position);
+            if (isGame(window, position, end)) {
+                readMoveList(window, position, end, game);
+                game.number = number++;
+                game.offset = offset;
+                action.accept(game);
+            }
+            // a line too long to be a game has been read as one that is not valid, and the rest of it is skipped
+            offset = end - position == MAX_LINE_LENGTH ? nextLine(offset + MAX_LINE_LENGTH)
+                    : offset + end - position + 1;
+        }
+        return number;
+    }
+
+    /**
+     * @return The offset just after the first '\n' at or after the given offset, or the length of the file if there
+     * is none.
+     */
+    private long nextLine(long offset) {
+        for (; offset < length; ++offset) {
+            if (windows[(int) (offset >>> WINDOW_SHIFT)].get((int) (offset & (WINDOW_BYTES - 1))) == '\n') {
+                return offset + 1;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Reads a single game back, from its offset.
+     * @param number The number of the game, which is given to the game as it is.
+     * @param offset The offset of the game (see Game.getOffset).
+     * @param game Where the game goes.
+     * @return True if the game is valid.
+     */
+    public boolean read(int number, long offset, Game game) {
+        MappedByteBuffer window = windows[(int) (offset >>> WINDOW_SHIFT)];
+        int position = (int) (offset & (WINDOW_BYTES - 1));
+        if (wthor) {
+            int moves = 0;
+            for (; moves < MAX_PLIES; ++moves) {
+                int code = window.get(position + WTHOR_MOVES_OFFSET + moves) & 0xFF;
+                int row = code / 10 - 1;
+                int col = code % 10 - 1;
+                if (code == 0) {
+                    break;
+                } else if (row < 0 || row >= 8 || col < 0 || col >= 8) {
+                    moves = -1 - moves;
+                    break;
+                }
+                game.squares[moves] = Bitboards.square(row, col);
+            }
+            game.replay(moves);
+        } else {
+            readMoveList(window, position, lineEnd(window, position), game);
+        }
+        game.number = number;
+        game.offset = offset;
+        return game.valid;
+    }
+
+    /**
+     * @return The number of games of a WTHOR database, as its header says.
+     */
+    private long wthorGames() {
+        return windows[0].getInt(4) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * @return The position of the end of the line that starts at the given position: its '\n', or the end of the file.
+     * A line that does not end within MAX_LINE_LENGTH characters ends there, and is read as a game that is not valid
+     * (forEach then skips the rest of it).
+     */
+    private int lineEnd(MappedByteBuffer window, int start) {
+        int limit = Math.min(window.limit(), start + MAX_LINE_LENGTH);
+        for (int position = start; position < limit; ++position) {
+            if (window.get(position) == '\n') {
+                return position;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * @return False if the line is empty or a comment.
+     */
+    private static boolean isGame(MappedByteBuffer window, int start, int end) {
+        for (int position = start; position < end; ++position) {
+            byte c = window.get(position);
+            if (!Character.isWhitespace(c)) {
+                return c != '#';
+            }
+        }
+        return false;
+    }
+
+    private static void readMoveList(MappedByteBuffer window, int start, int end, Game game) {
+        int moves = 0;
+        int position = start;
+        while (true) {
+            while (position < end && Character.isWhitespace(window.get(position))) {
+                ++position;
+            }
+            if (position == end) {
+                break;
+            }
+            int col = Character.toUpperCase(window.get(position)) - 'A';
+            int row = position + 1 < end ? window.get(position + 1) - '1' : -1;
+            if (moves == MAX_PLIES || col < 0 || col >= 8 || row < 0 || row >= 8) {
+                moves = -1 - moves;
+                break;
+            }
+            game.squares[moves++] = Bitboards.square(row, col);
+            position += 2;
+        }
+        game.replay(moves);
+    }
+}
@@ -0,0 +1,633 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * An index of the positions of a GameArchive: for every position any of its games reached, the games that reached it
+ * and how they ended. Positions are keyed like the opening book (see OpeningBook.key), so the 8 symmetries of a
+ * position share their entry, and the results are counted for the player to move, who is the same in all of them. <br>
+ * The index is a file, memory-mapped like the book, so that opening it costs nothing and a query only touches the
+ * pages it needs. It is made of four parts, one after the other:
+ * <pre>
+ *  header     int magic ("RVGI"), int version, long number of entries, long number of postings, long number of games,
+ *             int plies indexed, int reserved, long length of the archive
+ *  entries    long key, long index of its first posting, long sum of the disk differences, int games, int wins,
+ *             int draws, int reserved (sorted by key, as unsigned numbers, so a position is found by binary search)
+ *  postings   int number of a game, for every game of every entry, the games of an entry in the order of the archive
+ *  games      long offset of every game in the archive (see GameArchive.read)
+ * </pre>
+ * Wins, draws and disk differences are those of the player to move, at the end of the game. Two positions sharing a
+ * key would share their entry, which with 64-bit keys is unlikely enough over any number of games to be ignored. <br>
+ * The index is built by build, which replays the archive once and sorts what it finds in runs of a bounded size, so
+ * that archives of any size are indexed with the same memory, then merges the runs into the index. <br>
+ * Usage:
+ * <pre>
+ *  java GameIndex build archive index [--plies n]
+ *  java GameIndex query archive index [moves] [--games n]
+ * </pre>
+ * build indexes the positions up to the given number of moves into every game (all of them by default). query
+ * prints the results of the games that reached the position after the moves (the start position if there are none),
+ * those of every move played from it, and the first games that reached it (10 by default).
+ */
+public class GameIndex
+{
+    private static final int MAGIC = 0x52564749;    // "RVGI"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 48;
+    private static final int ENTRY_BYTES = 40;
+    private static final int POSTING_BYTES = 4;
+    private static final int OFFSET_BYTES = 8;
+
+    // the number of postings sorted at a time while building, 32 MB of keys and as much of games
+    private static final int RUN_POSTINGS = 1 << 22;
+
+    private final Section entries;
+    private final Section postings;
+    private final Section offsets;
+    private final long entryCount;
+    private final long gameCount;
+    private final int plies;
+    private final long archiveLength;
+
+    /**
+     * What the games that reached a position did from it, for the player to move.
+     */
+    public static final class Statistics
+    {
+        private final long firstPosting;
+        private final int games;
+        private final int wins;
+        private final int draws;
+        private final long diskDifferenceSum;
+
+        private Statistics(long firstPosting, int games, int wins, int draws, long diskDifferenceSum)
+        {
+            this.firstPosting = firstPosting;
+            this.games = games;
+            this.wins = wins;
+            this.draws = draws;
+            this.diskDifferenceSum = diskDifferenceSum;
+        }
+
+        /**
+         * @return The statistics of the opponent of the player to move.
+         */
+        private Statistics forOpponent() {
+            return new Statistics(firstPosting, games, games - wins - draws, draws, -diskDifferenceSum);
+        }
+
+        /**
+         * @return The number of games that reached the position.
+         */
+        public int getGames()
+        {
+            return this.games;
+        }
+
+        /**
+         * @return The number of them the player to move won.
+         */
+        public int getWins()
+        {
+            return this.wins;
+        }
+
+        /**
+         * @return The number of them that were drawn.
+         */
+        public int getDraws()
+        {
+            return this.draws;
+        }
+
+        /**
+         * @return The number of them the player to move lost.
+         */
+        public int getLosses()
+        {
+            return this.games - this.wins - this.draws;
+        }
+
+        /**
+         * @return The score of the player to move, a draw counting as half a win, from 0 to 1.
+         */
+        public double getWinRate()
+        {
+            return games > 0 ? (wins + 0.5 * draws) / games : 0;
+        }
+
+        /**
+         * @return The mean of the final disk differences, for the player to move.
+         */
+        public double getAverageDiskDifference()
+        {
+            return games > 0 ? (double) diskDifferenceSum / games : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d games, %.1f%% won, %.1f%% drawn, %.1f%% lost, %+.1f disks on average",
+                    games, 100.0 * wins / games, 100.0 * draws / games, 100.0 * getLosses() / games,
+                    getAverageDiskDifference());
+        }
+    }
+
+    /**
+     * Records of a fixed size, in a part of the file that may be larger than a single mapping. It is mapped as
+     * consecutive segments of whole records.
+     */
+    private static final class Section
+    {
+        private final MappedByteBuffer[] segments;
+        private final int recordBytes;
+        private final int recordsPerSegment;
+
+        private Section(FileChannel channel, long start, long records, int recordBytes) throws IOException
+        {
+            this.recordBytes = recordBytes;
+            this.recordsPerSegment = Integer.MAX_VALUE / recordBytes;
+            this.segments = new MappedByteBuffer[(int) ((records + recordsPerSegment - 1) / recordsPerSegment)];
+            for (int i = 0; i < segments.length; ++i) {
+                long first = (long) i * recordsPerSegment;
+                long count = Math.min(recordsPerSegment, records - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start + first * recordBytes,
+                        count * recordBytes);
+            }
+        }
+
+        private long getLong(long record, int field) {
+            return segments[(int) (record / recordsPerSegment)]
+                    .getLong((int) (record % recordsPerSegment) * recordBytes + field);
+        }
+
+        private int getInt(long record, int field) {
+            return segments[(int) (record / recordsPerSegment)]
+                    .getInt((int) (record % recordsPerSegment) * recordBytes + field);
+        }
+    }
+
+    private GameIndex(FileChannel channel, ByteBuffer header) throws IOException
+    {
+        this.entryCount = header.getLong(8);
+        long postingCount = header.getLong(16);
+        this.gameCount = header.getLong(24);
+        this.plies = header.getInt(32);
+        this.archiveLength = header.getLong(40);
+        long start = HEADER_BYTES;
+        this.entries = new Section(channel, start, entryCount, ENTRY_BYTES);
+        start += entryCount * ENTRY_BYTES;
+        this.postings = new Section(channel, start, postingCount, POSTING_BYTES);
+        start += postingCount * POSTING_BYTES;
+        this.offsets = new Section(channel, start, gameCount, OFFSET_BYTES);
+        if (start + gameCount * OFFSET_BYTES != channel.size()) {
+            throw new IOException("Truncated game index");
+        }
+    }
+
+    /**
+     * Maps an index file into memory.
+     * @param path The file written by build.
+     * @return The index.
+     * @throws IOException If the file cannot be read, or is not an index.
+     */
+    public static GameIndex open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // reading the header
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a game index: " + path);
+            }
+            // the mappings stay valid after the channel is closed
+            return new GameIndex(channel, header);
+        }
+    }
+
+    /**
+     * @return The number of positions in the index.
+     */
+    public long positions() {
+        return entryCount;
+    }
+
+    /**
+     * @return The number of games of the archive, including those that were not valid (and are in no entry).
+     */
+    public long games() {
+        return gameCount;
+    }
+
+    /**
+     * @return The number of moves into every game that the positions were indexed up to.
+     */
+    public int getPlies()
+    {
+        return this.plies;
+    }
+
+    /**
+     * @param archive An archive.
+     * @return True if the index could have been built from it: it has the size of the archive the index was built from.
+     */
+    public boolean matches(GameArchive archive) {
+        return archive.length() == archiveLength;
+    }
+
+    /**
+     * Looks up the games that reached a position.
+     * @param player The disks of the player to move.
+     * @param opponent The disks of their opponent.
+     * @return What happened in those games, or null if none reached it.
+     */
+    public Statistics lookup(long player, long opponent) {
+        long key = OpeningBook.key(player, opponent);
+        long low = 0;
+        long high = entryCount;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (Long.compareUnsigned(entries.getLong(middle, 0), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low == entryCount || entries.getLong(low, 0) != key) {
+            return null;
+        }
+        return new Statistics(entries.getLong(low, 8), entries.getInt(low, 24), entries.getInt(low, 28),
+                entries.getInt(low, 32), entries.getLong(low, 16));
+    }
+
+    /**
+     * @param board A board.
+     * @param playerColour The colour of the player to move.
+     * @return What happened in the games that reached the position, for the player to move, or null if none did.
+     */
+    public Statistics lookup(Board board, int playerColour) {
+        return lookup(board.getDisks(playerColour), board.getDisks(-playerColour));
+    }
+
+    /**
+     * @param statistics The statistics of a position, as found by lookup.
+     * @param limit The most games to return.
+     * @return The numbers of the first games (in the order of the archive) that reached the position.
+     */
+    public int[] games(Statistics statistics, int limit) {
+        int[] games = new int[Math.min(statistics.games, limit)];
+        for (int i = 0; i < games.length; ++i) {
+            games[i] = postings.getInt(statistics.firstPosting + i, 0);
+        }
+        return games;
+    }
+
+    /**
+     * Reads a game of the index back from its archive.
+     * @param archive The archive the index was built from.
+     * @param number The number of the game.
+     * @param game Where the game goes.
+     * @return True if the game is valid.
+     */
+    public boolean read(GameArchive archive, int number, GameArchive.Game game) {
+        return archive.read(number, offsets.getLong(number, 0), game);
+    }
+
+    /**
+     * Indexes the positions of every valid game of an archive.
+     * @param archive The archive.
+     * @param path The index file to write, which is replaced if it exists. The runs are written next to it, and
+     * deleted once merged.
+     * @param plies The number of moves into every game to index the positions up to, GameArchive.MAX_PLIES for all.
+     * @return The number of valid games indexed.
+     * @throws IOException If a file cannot be written.
+     */
+    public static int build(GameArchive archive, Path path, int plies) throws IOException {
+        Builder builder = new Builder(path);
+        try {
+            archive.forEach(game -> {
+                try {
+                    builder.add(game, plies);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            builder.write(plies, archive.length());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            builder.deleteRuns();
+        }
+        return builder.validGames;
+    }
+
+    /**
+     * Collects postings in runs, sorted by key, and merges them into an index.
+     */
+    private static final class Builder
+    {
+        private final Path path;
+        private final List<Path> runs = new ArrayList<>();
+        // where the entries and the postings are merged into, before they are copied into the index
+        private final Path entryPath;
+        private final Path postingPath;
+
+        // the postings of the current run: the keys, and the games with their disk differences (see posting)
+        private long[] keys = new long[RUN_POSTINGS];
+        private long[] postings = new long[RUN_POSTINGS];
+        private int size;
+
+        private long[] offsets = new long[1024];
+        private int games;
+        private int validGames;
+
+        private Builder(Path path)
+        {
+            this.path = path;
+            this.entryPath = path.resolveSibling(path.getFileName() + ".entries");
+            this.postingPath = path.resolveSibling(path.getFileName() + ".postings");
+        }
+
+        private void add(GameArchive.Game game, int plies) throws IOException {
+            if (games == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * games);
+            }
+            offsets[games++] = game.getOffset();
+            if (!game.isValid()) {
+                return;
+            }
+            ++validGames;
+            int black = game.getScore(Board.BLACK);
+            int white = game.getScore(Board.WHITE);
+            for (int ply = 0, last = Math.min(plies, game.getPlies()); ply <= last; ++ply) {
+                int colour = game.getPlayerToMove(ply);
+                int difference = colour == Board.BLACK ? black - white : white - black;
+                if (size == RUN_POSTINGS) {
+                    writeRun();
+                }
+                keys[size] = OpeningBook.key(game.getDisks(ply, colour), game.getDisks(ply, -colour));
+                postings[size] = posting(game.getNumber(), difference);
+                ++size;
+            }
+        }
+
+        /**
+         * @return A game and the disk difference it ended with, in one long that sorts by game.
+         */
+        private static long posting(int game, int difference) {
+            return (long) game << 8 | (difference + 64);
+        }
+
+        /**
+         * Sorts the postings collected so far by key, keeping those of a key in the order of the games, and writes
+         * them out as a run.
+         */
+        private void writeRun() throws IOException {
+            long[] sortedKeys = new long[size];
+            long[] sortedPostings = new long[size];
+            // a radix sort, 16 bits at a time from the lowest up, which is stable
+            for (int shift = 0; shift < 64; shift += 16) {
+                int[] counts = new int[(1 << 16) + 1];
+                for (int i = 0; i < size; ++i) {
+                    ++counts[(int) (keys[i] >>> shift & 0xFFFF) + 1];
+                }
+                for (int digit = 0; digit < 1 << 16; ++digit) {
+                    counts[digit + 1] += counts[digit];
+                }
+                for (int i = 0; i < size; ++i) {
+                    int target = counts[(int) (keys[i] >>> shift & 0xFFFF)]++;
+                    sortedKeys[target] = keys[i];
+                    sortedPostings[target] = postings[i];
+                }
+                long[] swap = keys;
+                keys = sortedKeys;
+                sortedKeys = swap;
+                swap = postings;
+                postings = sortedPostings;
+                sortedPostings = swap;
+            }
+
+            Path run = path.resolveSibling(path.getFileName() + ".run" + runs.size());
+            runs.add(run);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run),
+                    1 << 16))) {
+                for (int i = 0; i < size; ++i) {
+                    out.writeLong(keys[i]);
+                    out.writeLong(postings[i]);
+                }
+            }
+            size = 0;
+        }
+
+        /**
+         * A run being merged, with the posting it is at.
+         */
+        private static final class Run
+        {
+            private final DataInputStream in;
+            private final int order;    // the runs hold ever later games, so this breaks ties between keys
+            private long key;
+            private long posting;
+
+            private Run(Path path, int order) throws IOException
+            {
+                this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+                this.order = order;
+            }
+
+            /**
+             * @return False once the run is exhausted.
+             */
+            private boolean next() throws IOException {
+                try {
+                    key = in.readLong();
+                    posting = in.readLong();
+                    return true;
+                } catch (EOFException e) {
+                    in.close();
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Merges the runs into the index. The entries and the postings are written to files of their own, as their
+         * numbers are only known at the end, and then copied into the index after the header. The runs are only
+         * deleted by deleteRuns.
+         */
+        private void write(int plies, long archiveLength) throws IOException {
+            if (size > 0 || runs.isEmpty()) {
+                writeRun();
+            }
+            keys = null;
+            postings = null;
+
+            long entryCount = 0;
+            long postingCount = 0;
+            PriorityQueue<Run> queue = new PriorityQueue<>((a, b) -> a.key != b.key
+                    ? Long.compareUnsigned(a.key, b.key) : Integer.compare(a.order, b.order));
+            for (int i = 0; i < runs.size(); ++i) {
+                Run run = new Run(runs.get(i), i);
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+            try (DataOutputStream entryOut = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(entryPath), 1 << 16));
+                 DataOutputStream postingOut = new DataOutputStream(new BufferedOutputStream(
+                         Files.newOutputStream(postingPath), 1 << 16))) {
+                while (!queue.isEmpty()) {
+                    long key = queue.peek().key;
+                    long first = postingCount;
+                    int count = 0;
+                    int wins = 0;
+                    int draws = 0;
+                    long differenceSum = 0;
+                    while (!queue.isEmpty() && queue.peek().key == key) {
+                        Run run = queue.poll();
+                        int difference = (int) (run.posting & 0xFF) - 64;
+                        postingOut.writeInt((int) (run.posting >>> 8));
+                        ++postingCount;
+                        ++count;
+                        if (difference > 0) {
+                            ++wins;
+                        } else if (difference == 0) {
+                            ++draws;
+                        }
+                        differenceSum += difference;
+                        if (run.next()) {
+                            queue.add(run);
+                        }
+                    }
+                    entryOut.writeLong(key);
+                    entryOut.writeLong(first);
+                    entryOut.writeLong(differenceSum);
+                    entryOut.writeInt(count);
+                    entryOut.writeInt(wins);
+                    entryOut.writeInt(draws);
+                    entryOut.writeInt(0);
+                    ++entryCount;
+                }
+            }
+
+            try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(VERSION).putLong(entryCount).putLong(postingCount).putLong(games)
+                        .putInt(plies).putInt(0).putLong(archiveLength).flip();
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+                append(out, entryPath);
+                append(out, postingPath);
+                ByteBuffer gameOffsets = ByteBuffer.allocate(1 << 16);
+                for (int i = 0; i < games; ++i) {
+                    gameOffsets.putLong(offsets[i]);
+                    if (!gameOffsets.hasRemaining() || i == games - 1) {
+                        gameOffsets.flip();
+                        while (gameOffsets.hasRemaining()) {
+                            out.write(gameOffsets);
+                        }
+                        gameOffsets.clear();
+                    }
+                }
+            }
+        }
+
+        private static void append(FileChannel out, Path part) throws IOException {
+            try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                for (long position = 0, length = in.size(); position < length; ) {
+                    position += in.transferTo(position, length - position, out);
+                }
+            }
+        }
+
+        private void deleteRuns() throws IOException {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            Files.deleteIfExists(entryPath);
+            Files.deleteIfExists(postingPath);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || !(args[0].equals("build") || args[0].equals("query"))) {
+            System.err.println("Usage: java GameIndex build archive index [--plies n]");
+            System.err.println("       java GameIndex query archive index [moves] [--games n]");
+            System.exit(2);
+        }
+        GameArchive archive = GameArchive.open(Path.of(args[1]));
+        Path indexPath = Path.of(args[2]);
+        int plies = GameArchive.MAX_PLIES;
+        int gameLimit = 10;
+        StringBuilder moves = new StringBuilder();
+        for (int i = 3; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--plies" -> plies = Integer.parseInt(args[++i]);
+                case "--games" -> gameLimit = Integer.parseInt(args[++i]);
+                default -> moves.append(args[i]);
+            }
+        }
+
+        if (args[0].equals("build")) {
+            long start = System.nanoTime();
+            int games = build(archive, indexPath, plies);
+            GameIndex index = open(indexPath);
+            System.out.printf(Locale.ROOT, "Indexed %d positions of %d games (%d not valid) in %.1f s%n",
+                    index.positions(), games, index.games() - games, (System.nanoTime() - start) / 1e9);
+            return;
+        }
+
+        GameIndex index = open(indexPath);
+        if (!index.matches(archive)) {
+            System.err.println("The index was not built from " + archive.getPath());
+            System.exit(1);
+        }
+        Board board = Board.fromMoveList(moves.toString());
+        int colour = board.getPlayerToMove();
+        long start = System.nanoTime();
+        Statistics statistics = index.lookup(board, colour);
+        double lookupMillis = (System.nanoTime() - start) / 1e6;
+        String name = colour == Board.WHITE ? "white" : "black";
+        if (statistics == null) {
+            System.out.printf(Locale.ROOT, "No game reached the position (%.3f ms)%n", lookupMillis);
+            return;
+        }
+        System.out.printf(Locale.ROOT, "%s to move: %s (%.3f ms)%n", name, statistics, lookupMillis);
+
+        // the moves played from the position, with their results for the same player
+        for (long legal = board.legalMoves(colour); legal != 0; legal &= legal - 1) {
+            int square = Long.numberOfTrailingZeros(legal);
+            Board child = new Board(board);
+            child.makeMove(square / 8, square % 8, colour);
+            int childColour = child.getPlayerToMove();
+            Statistics move = index.lookup(child, childColour);
+            if (move != null) {
+                System.out.println("  " + new Move(square / 8, square % 8).formattedIndex() + ": "
+                        + (childColour == colour ? move : move.forOpponent()));
+            }
+        }
+
+        GameArchive.Game game = new GameArchive.Game();
+        for (int number : index.games(statistics, gameLimit)) {
+            index.read(archive, number, game);
+            System.out.println("  #" + number + " " + game.toMoveList() + " " + game.getScore(Board.BLACK) + "-"
+                    + game.getScore(Board.WHITE));
+        }
+    }
+}
@@ -1,5 +1,10 @@
 import java.util.Objects;
 
+/**
+ * A move on the board together with its value, as the search hands it to the rest of the program. <br>
+ * Inside the search, moves are packed into a long instead (see pack), so that searching a node allocates nothing. The
+ * value takes the upper 32 bits and the square (see Bitboards for the square numbering, -1 for no square) the lower 32.
+ */
 public class Move
 {
     private int row;
@@ -70,6 +75,40 @@ public class Move
         this.value = value;
     }
 
+    /**
+     * @param square The square of the move, -1 if there is none.
+     * @param value The value of the move.
+     * @return The move packed into a long.
+     */
+    public static long pack(int square, int value) {
+        return ((long) value << 32) | (square & 0xffffffffL);
+    }
+
+    /**
+     * @return The square of a packed move, -1 if it has none.
+     */
+    public static int square(long packed) {
+        return (int) packed;
+    }
+
+    /**
+     * @return The value of a packed move.
+     */
+    public static int value(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    /**
+     * @return A packed move as a Move instance, with a row and column of -1 if it has no square.
+     */
+    public static Move unpack(long packed) {
+        int square = square(packed);
+        if (square < 0) {
+            return new Move(value(packed));
+        }
+        return new Move(square / 8, square % 8, value(packed));
+    }
+
     /**
      * Used to return the square of the board that a Move corresponds to in a format that is easily readable by the user (e.g. D4 or E5)
      */
@@ -0,0 +1,202 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A book of opening moves, read straight from a memory-mapped file so that opening it costs nothing and every JVM
+ * using the same book shares its pages. <br>
+ * Positions are keyed by the hash of their canonical orientation (see Symmetry.canonical), so symmetric positions
+ * share their entries, and the moves are stored in the canonical orientation. The file is a 16-byte header followed
+ * by entries sorted by key, so a position is found by binary search:
+ * <pre>
+ *  header  int magic ("RVBK"), int version, int number of entries, int reserved
+ *  entry   long key, int square of the move (in the canonical orientation), int weight
+ * </pre>
+ * A position may have several entries, one per move, with the most played (heaviest) move first. Books are made with
+ * BookBuilder.
+ */
+public class OpeningBook
+{
+    private static final int MAGIC = 0x5256424b;    // "RVBK"
+    // version 1 keyed a position by the smallest hash of its orientations, rather than by its canonical orientation
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 16;
+
+    private final MappedByteBuffer buffer;
+    private final int size;
+
+    private OpeningBook(MappedByteBuffer buffer)
+    {
+        this.buffer = buffer;
+        this.size = buffer.getInt(8);
+    }
+
+    /**
+     * Maps a book file into memory.
+     * @param path The file written by Builder.write.
+     * @return The book.
+     * @throws IOException If the file cannot be read, or is not a book.
+     */
+    public static OpeningBook open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_BYTES) {
+                throw new IOException("Not an opening book: " + path);
+            }
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || length != HEADER_BYTES + (long) buffer.getInt(8) * ENTRY_BYTES) {
+                throw new IOException("Not an opening book: " + path);
+            }
+            return new OpeningBook(buffer);
+        }
+    }
+
+    /**
+     * @return The number of entries in the book.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Looks up the move the book plays in a position.
+     * @param board The current state of the board.
+     * @param playerColour The colour of the player to move.
+     * @return The square of the heaviest move of the book in the position (see Bitboards for the square numbering),
+     * or -1 if the book does not have the position.
+     */
+    public int lookup(Board board, int playerColour) {
+        long player = board.getDisks(playerColour);
+        long opponent = board.getDisks(-playerColour);
+        int symmetry = Symmetry.canonical(player, opponent);
+        long key = hash(Symmetry.transform(player, symmetry), Symmetry.transform(opponent, symmetry));
+
+        // the first entry with the key, which is the heaviest of its moves
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keyAt(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low == size || keyAt(low) != key) {
+            return -1;
+        }
+
+        int canonicalSquare = buffer.getInt(HEADER_BYTES + low * ENTRY_BYTES + 8);
+        int square = Symmetry.inverseSquare(canonicalSquare, symmetry);
+        // a key shared by another position could point to a square that cannot be played here
+        if ((board.legalMoves(playerColour) & (1L << square)) == 0) {
+            return -1;
+        }
+        return square;
+    }
+
+    private long keyAt(int index) {
+        return buffer.getLong(HEADER_BYTES + index * ENTRY_BYTES);
+    }
+
+    /**
+     * @param player The disks of the player to move.
+     * @param opponent The disks of their opponent.
+     * @return The key the position is stored under, the same for all 8 of its symmetries.
+     */
+    public static long key(long player, long opponent) {
+        int symmetry = Symmetry.canonical(player, opponent);
+        return hash(Symmetry.transform(player, symmetry), Symmetry.transform(opponent, symmetry));
+    }
+
+    private static long hash(long player, long opponent) {
+        long key = player * 0x9e3779b97f4a7c15L + Long.rotateLeft(opponent * 0xc2b2ae3d27d4eb4fL, 31);
+        return key ^ (key >>> 29);
+    }
+
+    /**
+     * Collects the moves played in positions, and writes them out as a book.
+     */
+    public static class Builder
+    {
+        // the number of times every move was played, per canonical position
+        private final Map<Long, int[]> weights = new HashMap<>();
+
+        /**
+         * Records a move played in a position.
+         * @param board The state of the board before the move.
+         * @param playerColour The colour of the player making the move.
+         * @param square The square of the move (see Bitboards for the square numbering).
+         */
+        public void add(Board board, int playerColour, int square) {
+            long player = board.getDisks(playerColour);
+            long opponent = board.getDisks(-playerColour);
+            int symmetry = Symmetry.canonical(player, opponent);
+            long key = hash(Symmetry.transform(player, symmetry), Symmetry.transform(opponent, symmetry));
+            int canonicalSquare = Symmetry.transformSquare(square, symmetry);
+            ++weights.computeIfAbsent(key, k -> new int[64])[canonicalSquare];
+        }
+
+        /**
+         * @return The number of positions recorded so far.
+         */
+        public int positions() {
+            return weights.size();
+        }
+
+        /**
+         * Writes every recorded move out as a book file.
+         * @param path The file to write, which is replaced if it exists.
+         * @return The number of entries written.
+         * @throws IOException If the file cannot be written.
+         */
+        public int write(Path path) throws IOException {
+            long[] keys = weights.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+            int entries = 0;
+            for (long key : keys) {
+                for (int weight : weights.get(key)) {
+                    if (weight > 0) {
+                        ++entries;
+                    }
+                }
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries);
+                out.writeInt(0);
+                for (long key : keys) {
+                    int[] moveWeights = weights.get(key).clone();
+                    // the moves of a position go from the heaviest to the lightest
+                    while (true) {
+                        int square = -1;
+                        for (int i = 0; i < 64; ++i) {
+                            if (moveWeights[i] > 0 && (square < 0 || moveWeights[i] > moveWeights[square])) {
+                                square = i;
+                            }
+                        }
+                        if (square < 0) {
+                            break;
+                        }
+                        out.writeLong(key);
+                        out.writeInt(square);
+                        out.writeInt(moveWeights[square]);
+                        moveWeights[square] = 0;
+                    }
+                }
+            }
+            return entries;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A heuristic function that scores positions from tables of pattern weights, as an alternative to Board.evaluate. <br>
+ * A pattern is a fixed set of squares, such as an edge with its two X squares or the 3x3 block at a corner. Every
+ * pattern is placed on the board in each of its symmetric orientations, and each placement reads the contents of its
+ * squares as a base-3 number (0 for empty, 1 for white and 2 for black, the first square of the pattern being the
+ * lowest digit). That number indexes the weights of the pattern directly. To read a placement, the board is turned
+ * so that the placement lands on the squares of the pattern. The disks of each colour are then gathered into a few
+ * bits with shifts and masks, and those bits are turned into base 3 through a table. Scoring a position therefore
+ * costs a few array lookups per placement. Mobility (the moves each player has) and potential mobility (the empty
+ * squares next to the opponent's disks) are added from bitboards. <br>
+ * All the weights of one stage of the game are kept in a single flat short[]. The game is split into stages by the
+ * number of empty squares. The weights can be saved to a file and loaded back, so they can be retrained without
+ * touching the code. Scores use the scale of Board.evaluate: positive is good for white, and a finished game is worth
+ * 10000 to the winner.
+ */
+public class PatternEvaluator
+{
+    public static final int STAGES = 4;
+    private static final int EMPTIES_PER_STAGE = 16;
+
+    private static final int MAGIC = 0x52565045;    // "RVPE"
+    private static final int VERSION = 1;
+
+    // the patterns in one orientation, as lists of squares (see Bitboards for the square numbering)
+    private static final int[][] PATTERNS = {
+            {0, 1, 2, 3, 4, 5, 6, 7, 9, 14},            // an edge and its two X squares
+            {0, 1, 2, 8, 9, 10, 16, 17, 18},            // the 3x3 block at a corner
+            {0, 9, 18, 27, 36, 45, 54, 63},             // the main diagonal
+            {1, 10, 19, 28, 37, 46, 55},                // the diagonals next to it, of 7 to 4 squares
+            {2, 11, 20, 29, 38, 47},
+            {3, 12, 21, 30, 39},
+            {4, 13, 22, 31}
+    };
+
+    /* the symmetries (see Symmetry.transform) each pattern is placed with, one for every distinct set of squares
+     * the pattern can cover. Evaluate follows this list. */
+    private static final int[][] PATTERN_SYMMETRIES = {
+            {0, 1, 4, 6}, {0, 1, 2, 3}, {0, 1}, {0, 1, 2, 3}, {0, 1, 2, 3}, {0, 1, 2, 3}, {0, 1, 2, 3}
+    };
+
+    // where the weights of each pattern start in the weights of a stage
+    private static final int[] PATTERN_OFFSET = new int[PATTERNS.length];
+    private static final int WEIGHTS_PER_STAGE;
+
+    // the base-3 number with a digit of 1 wherever the binary number has a bit set
+    private static final int[] TERNARY = new int[1 << 10];
+
+    // the squares of the diagonals of the patterns, by the column they start at on the first row
+    private static final long[] DIAGONALS = {
+            0x8040201008040201L, 0x0080402010080402L, 0x0000804020100804L, 0x0000008040201008L, 0x0000000080402010L
+    };
+
+    /* the value of a disk on each square, from which the default weights are built until trained ones are loaded.
+     * Corners are worth the most, the squares next to them are a liability. */
+    private static final int[] SQUARE_VALUES = {
+            200, -40,  20,  10,  10,  20, -40, 200,
+            -40, -80,  -4,  -4,  -4,  -4, -80, -40,
+             20,  -4,   2,   2,   2,   2,  -4,  20,
+             10,  -4,   2,   0,   0,   2,  -4,  10,
+             10,  -4,   2,   0,   0,   2,  -4,  10,
+             20,  -4,   2,   2,   2,   2,  -4,  20,
+            -40, -80,  -4,  -4,  -4,  -4, -80, -40,
+            200, -40,  20,  10,  10,  20, -40, 200
+    };
+    private static final int DEFAULT_MOBILITY_WEIGHT = 20;
+    private static final int DEFAULT_POTENTIAL_MOBILITY_WEIGHT = 5;
+
+    static {
+        int offset = 0;
+        for (int pattern = 0; pattern < PATTERNS.length; ++pattern) {
+            PATTERN_OFFSET[pattern] = offset;
+            offset += power(PATTERNS[pattern].length);
+        }
+        WEIGHTS_PER_STAGE = offset;
+
+        for (int bits = 1; bits < TERNARY.length; ++bits) {
+            int lowest = Integer.numberOfTrailingZeros(bits);
+            TERNARY[bits] = TERNARY[bits & (bits - 1)] + power(lowest);
+        }
+    }
+
+    // the weights of every stage, each stage holding the weights of every pattern one after the other
+    private final short[][] weights;
+    private final int[] mobilityWeights;
+    private final int[] potentialMobilityWeights;
+
+    /**
+     * Creates an evaluator with the default weights, which score every disk by the value of its square.
+     */
+    public PatternEvaluator()
+    {
+        this.weights = new short[STAGES][WEIGHTS_PER_STAGE];
+        this.mobilityWeights = new int[STAGES];
+        this.potentialMobilityWeights = new int[STAGES];
+
+        // a square covered by several placements gets a share of its value from each, so that every disk counts once
+        int[] coverage = new int[64];
+        for (int pattern = 0; pattern < PATTERNS.length; ++pattern) {
+            for (int symmetry : PATTERN_SYMMETRIES[pattern]) {
+                for (int square : PATTERNS[pattern]) {
+                    ++coverage[Long.numberOfTrailingZeros(Symmetry.transform(1L << square, symmetry))];
+                }
+            }
+        }
+        for (int pattern = 0; pattern < PATTERNS.length; ++pattern) {
+            int[] squares = PATTERNS[pattern];
+            for (int code = 0; code < power(squares.length); ++code) {
+                int value = 0;
+                int digits = code;
+                for (int i = 0; i < squares.length; ++i) {
+                    int disk = digits % 3;
+                    digits /= 3;
+                    if (disk != 0) {
+                        int share = SQUARE_VALUES[squares[i]] / coverage[squares[i]];
+                        value += disk == 1 ? share : -share;
+                    }
+                }
+                for (int stage = 0; stage < STAGES; ++stage) {
+                    weights[stage][PATTERN_OFFSET[pattern] + code] = (short) value;
+                }
+            }
+        }
+        Arrays.fill(mobilityWeights, DEFAULT_MOBILITY_WEIGHT);
+        Arrays.fill(potentialMobilityWeights, DEFAULT_POTENTIAL_MOBILITY_WEIGHT);
+    }
+
+    /**
+     * Loads the weights written by save.
+     * @param path The file to read.
+     * @return An evaluator with the weights of the file.
+     * @throws IOException If the file cannot be read, or does not hold weights for these patterns.
+     */
+    public static PatternEvaluator load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != STAGES
+                    || in.readInt() != WEIGHTS_PER_STAGE) {
+                throw new IOException("Not a weights file for this evaluator: " + path);
+            }
+            PatternEvaluator evaluator = new PatternEvaluator();
+            for (int stage = 0; stage < STAGES; ++stage) {
+                evaluator.mobilityWeights[stage] = in.readInt();
+                evaluator.potentialMobilityWeights[stage] = in.readInt();
+                short[] stageWeights = evaluator.weights[stage];
+                for (int i = 0; i < WEIGHTS_PER_STAGE; ++i) {
+                    stageWeights[i] = in.readShort();
+                }
+            }
+            return evaluator;
+        }
+    }
+
+    /**
+     * Writes the weights to a file, in the format load reads.
+     * @param path The file to write, which is replaced if it exists.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(STAGES);
+            out.writeInt(WEIGHTS_PER_STAGE);
+            for (int stage = 0; stage < STAGES; ++stage) {
+                out.writeInt(mobilityWeights[stage]);
+                out.writeInt(potentialMobilityWeights[stage]);
+                for (short weight : weights[stage]) {
+                    out.writeShort(weight);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return A hash of the weights, which tells evaluators with different weights apart, for instance to check that
+     * a PersistentTranspositionTable was filled by the same heuristic function.
+     */
+    public long fingerprint() {
+        long hash = MAGIC;
+        for (int stage = 0; stage < STAGES; ++stage) {
+            hash = hash * 0x9e3779b97f4a7c15L + Arrays.hashCode(weights[stage]);
+            hash = hash * 0x9e3779b97f4a7c15L + mobilityWeights[stage];
+            hash = hash * 0x9e3779b97f4a7c15L + potentialMobilityWeights[stage];
+        }
+        return hash;
+    }
+
+    /**
+     * @param board The board to evaluate.
+     * @return The value of the board, positive if it favours white and negative if it favours black.
+     */
+    public int evaluate(Board board) {
+        long white = board.getDisks(Board.WHITE);
+        long black = board.getDisks(Board.BLACK);
+        // the board keeps the moves it has worked out, which the search usually has for one of the colours already
+        long whiteMoves = board.legalMoves(Board.WHITE);
+        long blackMoves = board.legalMoves(Board.BLACK);
+
+        if (whiteMoves == 0 && blackMoves == 0) {
+            // the game is over, so only the winner matters
+            return Integer.signum(Long.bitCount(white) - Long.bitCount(black)) * 10000;
+        }
+
+        long empty = ~(white | black);
+        int stage = stage(Long.bitCount(empty));
+        short[] stageWeights = weights[stage];
+        int evaluation = 0;
+        /* the board is turned by the inverse of every symmetry that places a pattern (see Symmetry.inverse), so
+         * that the placements sit on the squares of their patterns. Transposed orientations only place edges. */
+        long mirroredWhite = Symmetry.mirror(white);
+        long mirroredBlack = Symmetry.mirror(black);
+        long transposedWhite = Symmetry.transpose(white);
+        long transposedBlack = Symmetry.transpose(black);
+        long flippedWhite = Long.reverseBytes(white);
+        long flippedBlack = Long.reverseBytes(black);
+
+        // which patterns each orientation places follows from their shapes (see PATTERN_SYMMETRIES)
+        evaluation += scoreEdge(stageWeights, white, black) + scoreMainDiagonal(stageWeights, white, black)
+                + scoreCornerAndDiagonals(stageWeights, white, black);
+        evaluation += scoreEdge(stageWeights, flippedWhite, flippedBlack)
+                + scoreMainDiagonal(stageWeights, flippedWhite, flippedBlack)
+                + scoreCornerAndDiagonals(stageWeights, flippedWhite, flippedBlack);
+        evaluation += scoreCornerAndDiagonals(stageWeights, mirroredWhite, mirroredBlack);
+        evaluation += scoreCornerAndDiagonals(stageWeights, Long.reverseBytes(mirroredWhite),
+                Long.reverseBytes(mirroredBlack));
+        evaluation += scoreEdge(stageWeights, transposedWhite, transposedBlack);
+        evaluation += scoreEdge(stageWeights, Long.reverseBytes(transposedWhite), Long.reverseBytes(transposedBlack));
+
+        evaluation += mobilityWeights[stage] * (Long.bitCount(whiteMoves) - Long.bitCount(blackMoves));
+        // the empty squares next to the opponent's disks are where a player is likely to find moves later on
+        evaluation += potentialMobilityWeights[stage] * (Long.bitCount(Bitboards.neighbours(black) & empty)
+                - Long.bitCount(Bitboards.neighbours(white) & empty));
+        return evaluation;
+    }
+
+    /**
+     * @return The weight of the edge pattern on the first row of the (turned) board.
+     */
+    private static int scoreEdge(short[] stageWeights, long white, long black) {
+        int code = TERNARY[edgeBits(white)] + 2 * TERNARY[edgeBits(black)];
+        return stageWeights[PATTERN_OFFSET[0] + code];
+    }
+
+    /**
+     * @return The weight of the main diagonal pattern of the (turned) board.
+     */
+    private static int scoreMainDiagonal(short[] stageWeights, long white, long black) {
+        int code = TERNARY[diagonalBits(white, 0)] + 2 * TERNARY[diagonalBits(black, 0)];
+        return stageWeights[PATTERN_OFFSET[2] + code];
+    }
+
+    /**
+     * @return The sum of the weights of the corner pattern and the shorter diagonal patterns of the (turned) board.
+     */
+    private static int scoreCornerAndDiagonals(short[] stageWeights, long white, long black) {
+        int score = stageWeights[PATTERN_OFFSET[1] + TERNARY[cornerBits(white)] + 2 * TERNARY[cornerBits(black)]];
+        for (int start = 1; start < DIAGONALS.length; ++start) {
+            int code = TERNARY[diagonalBits(white, start)] + 2 * TERNARY[diagonalBits(black, start)];
+            score += stageWeights[PATTERN_OFFSET[start + 2] + code];
+        }
+        return score;
+    }
+
+    /* the helpers below gather the disks on the squares of a pattern into the lowest bits, the first square of the
+     * pattern in bit 0 */
+
+    private static int edgeBits(long disks) {
+        return (int) ((disks & 0xff) | ((disks >>> 1) & 0x100) | ((disks >>> 5) & 0x200));
+    }
+
+    private static int cornerBits(long disks) {
+        return (int) ((disks & 0x7) | ((disks >>> 5) & 0x38) | ((disks >>> 10) & 0x1c0));
+    }
+
+    /**
+     * The squares of a diagonal are all in different columns, so multiplying sums the rows into the top byte without
+     * any carries, each square keeping the bit of its column.
+     * @param start The column the diagonal starts at on the first row.
+     */
+    private static int diagonalBits(long disks, int start) {
+        return (int) (((disks & DIAGONALS[start]) * 0x0101010101010101L) >>> (56 + start));
+    }
+
+    /**
+     * @return The stage of the game with the given number of empty squares, from 0 (the opening) to STAGES - 1.
+     */
+    public static int stage(int empties) {
+        return Math.min(STAGES - 1, (60 - empties) / EMPTIES_PER_STAGE);
+    }
+
+    /**
+     * @return 3 to the given power, the number of codes of a pattern of that many squares.
+     */
+    private static int power(int exponent) {
+        int result = 1;
+        for (int i = 0; i < exponent; ++i) {
+            result *= 3;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,199 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Counts the positions reachable from a position in a given number of moves (perft). This checks the move generator
+ * against known counts, and measures how fast it is. <br>
+ * A pass counts as a move when the player to move has no legal move but their opponent does, as in
+ * Reversi.reversiLoop. A game that ends before the depth is reached counts as a single leaf. With these rules the counts
+ * from the start position are the ones published for Othello (see KNOWN_COUNTS). <br>
+ * Usage:
+ * <pre>
+ *  java Perft [depth] [moves] [--threads n] [--cache megabytes]
+ * </pre>
+ * The moves, if given, are the moves leading to the position to count from (see Board.fromMoveList). By default it
+ * counts from the start position. PerftTest checks the counts against KNOWN_COUNTS.
+ */
+public class Perft
+{
+    /** The number of leaves at depths 0 to 11 from the start position. */
+    public static final long[] KNOWN_COUNTS = {
+            1, 4, 12, 56, 244, 1396, 8200, 55092, 390216, 3005288, 24571284, 212258800L
+    };
+
+    // with several threads, the positions this many moves from the root are counted as separate tasks
+    private static final int SPLIT_DEPTH = 3;
+
+    /* positions already counted, keyed by their Zobrist key and the depth they were counted to. The key of every slot
+     * is stored xor'ed with its count, like in TranspositionTable, so that threads can share the cache without locks. */
+    private final long[] cacheKeys;
+    private final long[] cacheCounts;
+    private final int cacheMask;
+
+    // the threads the count is split between, null to count on the calling thread only
+    private final ForkJoinPool pool;
+
+    /**
+     * @param threads The number of threads to count with.
+     * @param cacheMegabytes The memory budget of the cache of counted positions, 0 to count without one.
+     */
+    public Perft(int threads, int cacheMegabytes)
+    {
+        if (cacheMegabytes > 0) {
+            long budget = (long) cacheMegabytes * 1024 * 1024 / 16;
+            int entries = (int) Long.highestOneBit(Math.min(budget, 1 << 30));
+            this.cacheKeys = new long[entries];
+            this.cacheCounts = new long[entries];
+            this.cacheMask = entries - 1;
+        } else {
+            this.cacheKeys = null;
+            this.cacheCounts = null;
+            this.cacheMask = 0;
+        }
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    public static void main(String[] args) {
+        int depth = -1;
+        String moves = "";
+        int threads = 1;
+        int cacheMegabytes = 0;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--cache")) {
+                cacheMegabytes = Integer.parseInt(args[++i]);
+            } else if (depth < 0) {
+                depth = Integer.parseInt(args[i]);
+            } else {
+                moves = args[i];
+            }
+        }
+
+        Perft perft = new Perft(threads, cacheMegabytes);
+        try {
+            perft.report(Board.fromMoveList(moves), Math.max(depth, 0));
+        } finally {
+            perft.shutdown();
+        }
+    }
+
+    /**
+     * Counts every depth up to the given one, printing the leaves and the leaves counted per second.
+     */
+    private void report(Board board, int maxDepth) {
+        for (int depth = 1; depth <= maxDepth; ++depth) {
+            long start = System.nanoTime();
+            long count = count(board, board.getPlayerToMove(), depth);
+            long time = System.nanoTime() - start;
+            System.out.printf("depth %2d %14d leaves %10d ms %14.0f leaves/s%n", depth, count, time / 1_000_000,
+                    count * 1e9 / Math.max(time, 1));
+        }
+    }
+
+    /**
+     * @param board The position to count from. It is left as it was.
+     * @param playerColour The colour of the player to move.
+     * @param depth The number of moves (passes included) to look ahead.
+     * @return The number of leaves at the given depth.
+     */
+    public long count(Board board, int playerColour, int depth) {
+        if (pool == null || depth <= SPLIT_DEPTH) {
+            return perft(new Board(board), playerColour, depth);
+        }
+
+        // the positions at the split depth are counted in parallel, each on a copy of the board
+        List<Board> boards = new ArrayList<>();
+        List<Integer> colours = new ArrayList<>();
+        long leaves = split(new Board(board), playerColour, SPLIT_DEPTH, boards, colours);
+        List<ForkJoinTask<Long>> tasks = new ArrayList<>();
+        for (int i = 0; i < boards.size(); ++i) {
+            Board child = boards.get(i);
+            int colour = colours.get(i);
+            tasks.add(pool.submit(() -> perft(child, colour, depth - SPLIT_DEPTH)));
+        }
+        for (ForkJoinTask<Long> task : tasks) {
+            leaves += task.join();
+        }
+        return leaves;
+    }
+
+    /**
+     * Collects a copy of every position the given number of moves from the board, with the colour to move in it.
+     * @return The number of games that ended before reaching those positions, which are leaves in their own right.
+     */
+    private static long split(Board board, int colour, int depth, List<Board> boards, List<Integer> colours) {
+        if (depth == 0) {
+            boards.add(new Board(board));
+            colours.add(colour);
+            return 0;
+        }
+        long moves = board.legalMoves(colour);
+        if (moves == 0) {
+            if (board.legalMoves(-colour) == 0) {
+                return 1;
+            }
+            return split(board, -colour, depth - 1, boards, colours);
+        }
+        long leaves = 0;
+        for (; moves != 0; moves &= moves - 1) {
+            board.playMove(Long.numberOfTrailingZeros(moves), colour);
+            leaves += split(board, -colour, depth - 1, boards, colours);
+            board.undoMove();
+        }
+        return leaves;
+    }
+
+    private long perft(Board board, int colour, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        long moves = board.legalMoves(colour);
+        if (moves == 0) {
+            if (board.legalMoves(-colour) == 0) {
+                // neither player can play, so the game is over
+                return 1;
+            }
+            return perft(board, -colour, depth - 1);
+        }
+        // the children of the last move are all leaves, so they are counted without being played
+        if (depth == 1) {
+            return Long.bitCount(moves);
+        }
+
+        long key = 0;
+        int slot = 0;
+        if (cacheKeys != null) {
+            key = board.getZobristKey(colour) ^ (depth * 0x9e3779b97f4a7c15L);
+            slot = (int) key & cacheMask;
+            long cached = cacheCounts[slot];
+            if (cached != 0 && (cacheKeys[slot] ^ cached) == key) {
+                return cached;
+            }
+        }
+
+        long leaves = 0;
+        for (; moves != 0; moves &= moves - 1) {
+            board.playMove(Long.numberOfTrailingZeros(moves), colour);
+            leaves += perft(board, -colour, depth - 1);
+            board.undoMove();
+        }
+
+        if (cacheKeys != null) {
+            cacheCounts[slot] = leaves;
+            cacheKeys[slot] = key ^ leaves;
+        }
+        return leaves;
+    }
+
+    /**
+     * Stops the threads of the counter, if it has any.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A transposition table kept in a memory-mapped file, so that what is searched outlives the process and is shared
+ * with every other engine process on the host that opens the same file. <br>
+ * The entries are those of TranspositionTable, in buckets of two slots of 16 bytes after a 64-byte header:
+ * <pre>
+ *  header  int magic ("RVTT"), int version, long number of slots, long fingerprint, int generation, padding
+ *  slot    long key xor entry, long entry
+ * </pre>
+ * All little-endian. The fingerprint tells the heuristic functions apart (see PatternEvaluator.fingerprint): values
+ * of one do not compare with those of another, so a file only opens for the one it was filled with. <br>
+ * Nothing is locked once the file is open. Every word is read and written atomically, through a VarHandle on the
+ * mapping, which works between processes as it does between threads. A slot is claimed by a compare-and-set on its
+ * entry, and a slot whose two words were written by different writers fails to match, as in TranspositionTable. <br>
+ * The generation is in the header, and every process that starts a search moves it on for all of them. Entries
+ * are stamped with it, and the oldest entry of a full bucket is replaced first (then the shallowest), so the table
+ * keeps a bounded size while what has not been looked at for longest makes way. <br>
+ * Opening maps the file without reading it: the operating system reads a page in when a probe first touches it, so
+ * a large table opens at once, and a page another process has read is in memory already. It writes the pages back
+ * as well, even if the process is killed; force only matters to survive a crash of the host.
+ */
+public class PersistentTranspositionTable extends TranspositionTable
+{
+    private static final int MAGIC = 0x52565454;    // "RVTT"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOTS_OFFSET = 8;
+    private static final int FINGERPRINT_OFFSET = 16;
+    private static final int GENERATION_OFFSET = 24;
+
+    private static final int BUCKET_SIZE = 2;
+    private static final int SLOT_BYTES = 16;
+    private static final int BUCKET_BYTES = BUCKET_SIZE * SLOT_BYTES;
+
+    // the mapping is made of windows of this size, which buckets never straddle as both the header and them divide it
+    private static final int WINDOW_SHIFT = 30;
+    private static final long WINDOW_BYTES = 1L << WINDOW_SHIFT;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final Path path;
+    private final boolean readOnly;
+    private final MappedByteBuffer[] windows;
+    private final long slots;
+    private final long bucketMask;
+
+    private PersistentTranspositionTable(Path path, boolean readOnly, MappedByteBuffer[] windows, long slots)
+    {
+        super(ReplacementPolicy.DEPTH_PREFERRED);
+        this.path = path;
+        this.readOnly = readOnly;
+        this.windows = windows;
+        this.slots = slots;
+        this.bucketMask = slots / BUCKET_SIZE - 1;
+    }
+
+    /**
+     * Opens a table, creating it if the file does not exist or is empty. Opening takes a lock on the file, so that
+     * only one process creates it, but nothing holds one afterwards.
+     * @param path The file.
+     * @param megabytes The size of the table if it is created, rounded down to a power of 2 of slots. An existing
+     * table keeps its own size.
+     * @param fingerprint The fingerprint of the heuristic function the values are from.
+     * @param readOnly True to only probe the table, in which case it has to exist already. Nothing is stored, and the
+     * generation is left alone.
+     * @return The table.
+     * @throws IOException If the file cannot be opened, is not a table, or was filled with another heuristic function.
+     */
+    public static PersistentTranspositionTable open(Path path, int megabytes, long fingerprint, boolean readOnly)
+            throws IOException {
+        if (megabytes <= 0) {
+            throw new IllegalArgumentException("The memory budget must be positive.");
+        }
+        try (FileChannel channel = readOnly
+                ? FileChannel.open(path, StandardOpenOption.READ)
+                : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            // the lock is released as the channel is closed
+            channel.lock(0, Long.MAX_VALUE, readOnly);
+            if (channel.size() == 0 && !readOnly) {
+                create(channel, megabytes, fingerprint);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.read(header, 0) != HEADER_BYTES || header.getInt(0) != MAGIC) {
+                throw new IOException("Not a transposition table: " + path);
+            } else if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported transposition table version " + header.getInt(4) + ": " + path);
+            }
+            long slots = header.getLong(SLOTS_OFFSET);
+            if (Long.bitCount(slots) != 1 || slots < BUCKET_SIZE
+                    || channel.size() != HEADER_BYTES + slots * SLOT_BYTES) {
+                throw new IOException("Truncated transposition table: " + path);
+            } else if (header.getLong(FINGERPRINT_OFFSET) != fingerprint) {
+                throw new IOException("The transposition table was filled with another heuristic function: " + path);
+            }
+
+            long length = channel.size();
+            MappedByteBuffer[] windows = new MappedByteBuffer[(int) ((length + WINDOW_BYTES - 1) >>> WINDOW_SHIFT)];
+            for (int i = 0; i < windows.length; ++i) {
+                long start = (long) i << WINDOW_SHIFT;
+                // the mappings stay valid after the channel is closed
+                windows[i] = channel.map(readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE,
+                        start, Math.min(length - start, WINDOW_BYTES));
+            }
+            return new PersistentTranspositionTable(path, readOnly, windows, slots);
+        }
+    }
+
+    /**
+     * Writes the header of a new table and sizes the file, whose slots the file system fills with zeros (no entry).
+     */
+    private static void create(FileChannel channel, int megabytes, long fingerprint) throws IOException {
+        long budget = (long) megabytes * 1024 * 1024 / SLOT_BYTES;
+        long slots = Math.max(Long.highestOneBit(budget), BUCKET_SIZE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putLong(SLOTS_OFFSET, slots);
+        header.putLong(FINGERPRINT_OFFSET, fingerprint);
+        channel.write(header, 0);
+        // writing the last byte extends the file, sparsely where the file system can
+        channel.write(ByteBuffer.allocate(1), HEADER_BYTES + slots * SLOT_BYTES - 1);
+    }
+
+    /**
+     * @return The file of the table.
+     */
+    public Path getPath()
+    {
+        return this.path;
+    }
+
+    /**
+     * @return True if the table was opened to be probed only.
+     */
+    public boolean isReadOnly()
+    {
+        return this.readOnly;
+    }
+
+    /**
+     * Moves the generation of every process sharing the table on, so that what earlier searches stored is replaced
+     * first.
+     */
+    @Override
+    public void newSearch() {
+        if (!readOnly) {
+            INTS.getAndAdd(windows[0], GENERATION_OFFSET, 1);
+        }
+    }
+
+    /**
+     * Empties the table, for every process sharing it.
+     * @throws IllegalStateException If the table is read-only.
+     */
+    @Override
+    public void clear() {
+        if (readOnly) {
+            throw new IllegalStateException("The transposition table is read-only: " + path);
+        }
+        for (long slot = 0; slot < slots; ++slot) {
+            long offset = HEADER_BYTES + slot * SLOT_BYTES;
+            LONGS.setOpaque(window(offset), position(offset) + 8, 0L);
+        }
+    }
+
+    @Override
+    public long probe(long key) {
+        long bucket = HEADER_BYTES + (key & bucketMask) * BUCKET_BYTES;
+        MappedByteBuffer window = window(bucket);
+        int position = position(bucket);
+        for (int slot = position; slot < position + BUCKET_BYTES; slot += SLOT_BYTES) {
+            // the entry is read first, as it is written first
+            long entry = (long) LONGS.getAcquire(window, slot + 8);
+            if (entry != 0 && ((long) LONGS.getOpaque(window, slot) ^ entry) == key) {
+                return entry;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stores the result of searching a position, unless the table is read-only, or another thread or process
+     * writes to the same slot at the same moment (this result is then dropped).
+     */
+    @Override
+    public void store(long key, int depth, int bound, int value, int move) {
+        if (readOnly) {
+            return;
+        }
+        long bucket = HEADER_BYTES + (key & bucketMask) * BUCKET_BYTES;
+        MappedByteBuffer window = window(bucket);
+        int position = position(bucket);
+        int generation = generation();
+        int target = -1;
+        long replaced = 0;
+
+        // a slot that already holds the same position is always reused, unless it holds a deeper result of this search
+        for (int slot = position; slot < position + BUCKET_BYTES; slot += SLOT_BYTES) {
+            long entry = (long) LONGS.getAcquire(window, slot + 8);
+            if (entry != 0 && ((long) LONGS.getOpaque(window, slot) ^ entry) == key) {
+                if (generation(entry) == generation && depth(entry) > depth && bound != EXACT) {
+                    return;
+                }
+                target = slot;
+                replaced = entry;
+                break;
+            }
+        }
+
+        if (target < 0) {
+            int worst = Integer.MAX_VALUE;
+            for (int slot = position; slot < position + BUCKET_BYTES; slot += SLOT_BYTES) {
+                long entry = (long) LONGS.getAcquire(window, slot + 8);
+                int score = replacementScore(entry, generation);
+                if (score < worst) {
+                    worst = score;
+                    target = slot;
+                    replaced = entry;
+                }
+            }
+        }
+
+        long entry = pack(generation, depth, bound, value, move);
+        if (LONGS.compareAndSet(window, target + 8, replaced, entry)) {
+            LONGS.setRelease(window, target, key ^ entry);
+        }
+    }
+
+    /**
+     * @return How worth keeping an entry is: the older it is, the less, then the shallower. The entry with the lowest
+     * score in a bucket is the one replaced.
+     */
+    private static int replacementScore(long entry, int generation) {
+        if (entry == 0) {
+            return Integer.MIN_VALUE;
+        }
+        int age = (generation - generation(entry)) & 0xff;
+        return depth(entry) - (age << 8);
+    }
+
+    @Override
+    public int capacity() {
+        return (int) Math.min(slots, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Writes what has been stored to the file now, rather than whenever the operating system gets round to it.
+     */
+    public void force() {
+        if (!readOnly) {
+            for (MappedByteBuffer window : windows) {
+                window.force();
+            }
+        }
+    }
+
+    /**
+     * @return The generation of the table, as the entries store it.
+     */
+    private int generation() {
+        return (int) INTS.getOpaque(windows[0], GENERATION_OFFSET) & 0xff;
+    }
+
+    private MappedByteBuffer window(long offset) {
+        return windows[(int) (offset >>> WINDOW_SHIFT)];
+    }
+
+    private static int position(long offset) {
+        return (int) (offset & (WINDOW_BYTES - 1));
+    }
+}
@@ -1,17 +1,367 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Player
 {
+    /* nodes closer than this to the leaves are not split between threads, as searching them takes less time than
+     * handing them over to another thread */
+    private static final int MIN_SPLIT_DEPTH = 4;
+
+    private static final int MAX_PLY = 64;  // a game never lasts more than 60 moves, so neither can a search
+
+    private static final long CORNER_SQUARES = 0x8100000000000081L;
+    /* the squares next to a corner (the X and C squares). Playing on one of them usually gives the corner away, so they
+     * are searched last. */
+    private static final long X_AND_C_SQUARES = 0x42c300000000c342L;
+
+    // the ordering scores of the kinds of moves, from the one searched first to the one searched last
+    private static final int HASH_MOVE_SCORE = 1 << 30;
+    private static final int CORNER_SCORE = 1 << 28;
+    private static final int KILLER_SCORE = 1 << 26;
+    private static final int X_AND_C_SCORE = -(1 << 28);
+    private static final int MAX_HISTORY_SCORE = 1 << 24;
+
+    // the bounds of the widest window of the principal variation search, which (unlike Integer.MIN_VALUE) can be negated
+    private static final int INFINITY = Integer.MAX_VALUE;
+    // how far either side of the expected value the first window of the root is set, doubled whenever it fails
+    private static final int ASPIRATION_WINDOW = 50;
+
     private final int maxDepth;
     private final int playerColour;
     private final Random random;    // we will be using a random boolean to solve ties in minimax values
 
+    // results of previous searches, kept from one move to the next (null if the player should not use one)
+    private TranspositionTable transpositionTable;
+
+    // the time the player may spend on a move in milliseconds, 0 to always search to maxDepth regardless of time
+    private long timeBudget;
+
+    private int searchDepth;    // the depth the current iteration searches to (maxDepth, unless deepening iteratively)
+    private long deadline;      // the System.nanoTime() by which the current search has to finish
+    private boolean aborted;    // set once the deadline passes, so that the search unwinds without finishing
+    private long nodes;         // the number of nodes visited by max and min
+    private int nodesUntilTimeCheck;
+
+    // whether the moves of every node are ordered before they are searched, to make cutoffs happen earlier
+    private boolean moveOrdering;
+
+    // whether the player searches with principalVariationSearch instead of max and min
+    private boolean principalVariationSearch;
+    private int rootSquare;     // the best move principalVariationSearch found at the root
+
+    // the parameters of the selective search of principalVariationSearch, null to search every move to the full depth
+    private ProbCut probCut;
+
+    // where what the search does is recorded, null to record nothing (see setStatistics)
+    private SearchStatistics statistics;
+    private SearchStatistics.Stripe stripe;     // the counters of this thread, null without statistics
+    private String source;      // how the last move was chosen: "book", "solver" or "search"
+    private int completedDepth; // the depth of the last search that finished
+
+    // the heuristic function used at the leaves, null to use Board.evaluate
+    private PatternEvaluator patternEvaluator;
+
+    // the book consulted before searching, null to always search
+    private OpeningBook openingBook;
+
+    // positions with this many empty squares or fewer are solved exactly instead of searched (0 to never solve them)
+    private int endgameThreshold;
+    private int endgameMegabytes;           // the size of the transposition table of the solver
+    private EndgameSolver endgameSolver;    // created on the first position that is solved
+
+    /* per-ply buffers the moves of every node are ordered in, so that ordering allocates nothing. Every node uses the
+     * row of its depth, which its children never touch. */
+    private final int[][] moveLists;
+    private final int[][] moveScores;
+
+    // the two moves that most recently caused a cutoff at each depth, which are likely to do so again in sibling nodes
+    private final int[][] killerMoves;
+
+    // for each colour (white first) and square, how often and how deep a move there has caused a cutoff
+    private final int[][] history;
+
+    // the threads the search is split between (see HelperThread), null to search on the calling thread only
+    private ForkJoinPool pool;
+
+    /* for a helper, set by the thread that splits a node once a sibling has produced a cutoff, so that the helpers can
+     * stop early. Null for the player itself. */
+    private AtomicBoolean cancelled;
+
+    // set from another thread to end the search early (see setStopped), shared with the helpers and the endgame solver
+    private final AtomicBoolean stopped;
+
+    // told about every iteration of the iterative deepening that finishes, null to tell no one
+    private IterationListener iterationListener;
+
+    /**
+     * Is told how the search of a move is getting on, for instance to show the analysis of a position while it runs.
+     */
+    public interface IterationListener
+    {
+        /**
+         * Called on the searching thread every time an iteration of the iterative deepening finishes.
+         * @param depth The depth the iteration searched to.
+         * @param bestMove The best move it found, valued from white's point of view.
+         * @param nodes The number of nodes visited by the search of the move so far.
+         */
+        void iterationFinished(int depth, Move bestMove, long nodes);
+    }
+
     public Player(int maxDepth, int playerColour)
+    {
+        this(maxDepth, playerColour, new TranspositionTable());
+    }
+
+    /**
+     * @param maxDepth The depth the player searches to.
+     * @param playerColour The colour the player plays.
+     * @param transpositionTable The transposition table to search with, null to search without one. A table may be
+     * shared between players that take turns, as the players of one game do, so that no player allocates a table of
+     * its own only for it to be replaced.
+     */
+    public Player(int maxDepth, int playerColour, TranspositionTable transpositionTable)
     {
         this.maxDepth = maxDepth;
+        this.searchDepth = maxDepth;
         this.playerColour = playerColour;
         this.random = new Random();
+        this.transpositionTable = transpositionTable;
+        this.cancelled = null;
+        this.stopped = new AtomicBoolean();
+        this.moveOrdering = true;
+        this.endgameMegabytes = TranspositionTable.DEFAULT_MEGABYTES;
+        this.moveLists = new int[MAX_PLY][64];
+        this.moveScores = new int[MAX_PLY][64];
+        this.killerMoves = newKillerMoves();
+        this.history = new int[2][64];
+    }
+
+    /**
+     * Creates a helper that searches parts of the tree of its parent on a thread of its pool (see HelperThread). The
+     * helper keeps its own node count, random generator, move buffers and killer moves from one split to the next, and
+     * takes everything else from its parent whenever it is handed a node (see follow).
+     * @param parent The player whose search is being split.
+     */
+    private Player(Player parent)
+    {
+        this.maxDepth = parent.maxDepth;
+        this.playerColour = parent.playerColour;
+        this.random = new Random();
+        this.stopped = parent.stopped;
+        this.moveLists = new int[MAX_PLY][64];
+        this.moveScores = new int[MAX_PLY][64];
+        this.killerMoves = newKillerMoves();
+        this.history = parent.history;  // shared, a lost update between threads only makes the ordering slightly worse
+    }
+
+    /**
+     * A thread of the pool of a player, with the helper that searches on it. The helper lives as long as the thread,
+     * so splitting a node creates no player, and the killer moves of the helper stay warm from one split to the next.
+     */
+    private static final class HelperThread extends ForkJoinWorkerThread
+    {
+        private final Player helper;
+
+        private HelperThread(ForkJoinPool pool, Player parent)
+        {
+            super(pool);
+            this.helper = new Player(parent);
+        }
+    }
+
+    /**
+     * Sets the number of threads the search is split between. With more than one thread, the player uses principal
+     * variation splitting: along the leftmost path of the tree the first child of every node is searched alone (so that
+     * it sets the bounds), after which the remaining children are searched in parallel by the helpers of the threads,
+     * sharing the bound as it improves. This holds for max and min as well as for the principal variation search, with
+     * or without ProbCut. The value found by max and min is the same as that of the single-threaded search. The one
+     * found by the principal variation search can differ from it where ProbCut, or a transposition table entry stored
+     * by another thread, cuts a node off.
+     * @param threads The number of threads to use, 1 to search on the calling thread only.
+     */
+    public void setThreads(int threads)
+    {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        this.pool = threads > 1 ? new ForkJoinPool(threads, pool -> new HelperThread(pool, this), null, false) : null;
+    }
+
+    /**
+     * Replaces the transposition table of the player, for instance with one of a different size or replacement policy.
+     * @param transpositionTable The table to use, or null to search without one.
+     */
+    public void setTranspositionTable(TranspositionTable transpositionTable)
+    {
+        this.transpositionTable = transpositionTable;
+    }
+
+    /**
+     * @return The transposition table of the player, null if it searches without one.
+     */
+    public TranspositionTable getTranspositionTable()
+    {
+        return this.transpositionTable;
+    }
+
+    /**
+     * Gives the player a time limit per move. With a budget, the player deepens iteratively: it searches to depth 1, 2,
+     * 3 and so on (up to maxDepth) and plays the best move of the last iteration that finished within the budget.
+     * Every iteration starts with the best moves the previous one stored in the transposition table, which makes
+     * the deeper iterations considerably cheaper.
+     * @param timeBudget The time budget in milliseconds, 0 to search every move to maxDepth however long it takes.
+     */
+    public void setTimeBudget(long timeBudget)
+    {
+        this.timeBudget = Math.max(0, timeBudget);
+    }
+
+    /**
+     * @return The time budget per move in milliseconds, 0 if the player searches every move to maxDepth.
+     */
+    public long getTimeBudget()
+    {
+        return this.timeBudget;
+    }
+
+    /**
+     * Turns move ordering on (the default) or off. With ordering, every node searches the move stored in the
+     * transposition table first, then corners, then the killer moves of its depth, then the rest by their history score,
+     * and the squares next to the corners last. Without it, moves are searched in row-major order, which is only useful
+     * to measure how many nodes ordering saves (see getNodeCount).
+     * @param moveOrdering True to order moves, false to search them in row-major order.
+     */
+    public void setMoveOrdering(boolean moveOrdering)
+    {
+        this.moveOrdering = moveOrdering;
+    }
+
+    /**
+     * Switches between the two search algorithms of the player. The default is minimax with alpha-beta pruning (max and
+     * min), which searches every child with the full window. The principal variation search (NegaScout) only searches
+     * the first child of every node with the full window, and proves that each of the others is worse with a null
+     * window, searching it again with the full window only if that fails. The root is searched with an aspiration
+     * window around the value stored for it in the transposition table, if there is one. <br>
+     * Both find the same value, but with good move ordering the principal variation search visits far fewer nodes. It
+     * keeps the first of equally good moves rather than choosing between them at random, and is only used on a single
+     * thread (with more threads, see setThreads).
+     * @param principalVariationSearch True to use the principal variation search, false to use max and min.
+     */
+    public void setPrincipalVariationSearch(boolean principalVariationSearch)
+    {
+        this.principalVariationSearch = principalVariationSearch;
+    }
+
+    /**
+     * Makes the principal variation search selective with Multi-ProbCut: before a node is searched deeply, a shallow
+     * search predicts the result, and the node is cut if the prediction falls outside the window with the confidence
+     * of the parameters. This lets the player search considerably deeper in the same time, at the cost of the odd
+     * mistake. It has no effect on max and min (see setPrincipalVariationSearch). With ProbCut, the player deepens
+     * iteratively even without a time budget (see setTimeBudget).
+     * @param probCut The parameters, fitted with ProbCutCalibration for the heuristic function the player uses, or null
+     * to search every move to the full depth.
+     */
+    public void setProbCut(ProbCut probCut)
+    {
+        this.probCut = probCut;
+    }
+
+    /**
+     * Makes the player record what its searches do (see SearchStatistics). The counting happens in plain fields of the
+     * player and of its helper threads, and is only added to the statistics once a move has been chosen.
+     * @param statistics The statistics to record into, which may be shared with other players, or null to record
+     * nothing.
+     */
+    public void setStatistics(SearchStatistics statistics)
+    {
+        this.statistics = statistics;
+        this.stripe = statistics != null ? new SearchStatistics.Stripe() : null;
+    }
+
+    /**
+     * Makes the player score the leaves of its search with a pattern evaluator instead of Board.evaluate.
+     * @param patternEvaluator The evaluator to use, or null to go back to Board.evaluate.
+     */
+    public void setPatternEvaluator(PatternEvaluator patternEvaluator)
+    {
+        this.patternEvaluator = patternEvaluator;
+    }
+
+    /**
+     * Gives the player an opening book. While the game is still in the book, the player plays the move of the book
+     * instead of searching.
+     * @param openingBook The book to consult, or null to always search.
+     */
+    public void setOpeningBook(OpeningBook openingBook)
+    {
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * Sets the number of empty squares at or below which the player stops searching with the heuristic function and
+     * solves the rest of the game exactly with an EndgameSolver. The value of the move returned is then the final disk
+     * difference (white's disks minus black's) with best play from both sides, rather than a heuristic value. <br>
+     * Solving is off by default, as it makes the player perfect from the threshold on, whatever its depth. The solve
+     * keeps to the time budget, and a solve that runs out of time falls back to the search for what is left of it.
+     * @param endgameThreshold The number of empty squares, 0 to always search with the heuristic function (see
+     * EndgameSolver.DEFAULT_THRESHOLD for a usual value).
+     */
+    public void setEndgameThreshold(int endgameThreshold)
+    {
+        this.endgameThreshold = Math.max(0, endgameThreshold);
+    }
+
+    /**
+     * Sets the size of the transposition table of the endgame solver, which is kept apart from the one of the player as
+     * it stores final disk differences rather than heuristic values. Takes effect on the next position solved.
+     * @param megabytes The memory budget of the table, TranspositionTable.DEFAULT_MEGABYTES by default.
+     */
+    public void setEndgameTableSize(int megabytes)
+    {
+        if (megabytes <= 0) {
+            throw new IllegalArgumentException("The memory budget must be positive.");
+        }
+        this.endgameMegabytes = megabytes;
+        this.endgameSolver = null;
+    }
+
+    /**
+     * Stops the search of the player, from another thread, or lets it search again. A stopped player finishes the
+     * search it is running as soon as it can, with the best move of the last iteration of the iterative deepening that
+     * finished (the first iteration is always finished, see isOutOfTime). A position being solved falls back to the
+     * search. The player stays stopped, and every later search stops just as early, until setStopped(false) is called,
+     * so a stop that arrives just before a search starts is never lost. <br>
+     * A search to a fixed depth (without a time budget or ProbCut) has no iteration to fall back on, and minimax returns
+     * null if it is stopped.
+     * @param stopped True to stop the player, false to let it search again.
+     */
+    public void setStopped(boolean stopped)
+    {
+        this.stopped.set(stopped);
+    }
+
+    /**
+     * Sets who is told about every iteration of the iterative deepening that finishes.
+     * @param iterationListener The listener, or null to tell no one.
+     */
+    public void setIterationListener(IterationListener iterationListener)
+    {
+        this.iterationListener = iterationListener;
+    }
+
+    /**
+     * @return The number of nodes visited by the last call of minimax, including the ones visited by helper threads.
+     */
+    public long getNodeCount()
+    {
+        return this.nodes;
     }
 
     /**
@@ -22,50 +372,382 @@ public class Player
      * @return The move as calculated by the minimax algorithm
      */
 	public Move minimax(Board board) {
+        if (statistics == null) {
+            return chooseMove(board);
+        }
+        long start = System.nanoTime();
+        Move move = chooseMove(board);
+        statistics.recordMove(board, playerColour, move, source, completedDepth, nodes, System.nanoTime() - start,
+                stripe);
+        return move;
+    }
+
+    /**
+     * Does the work of minimax: plays from the book, solves the position or searches it.
+     * @param board The current state of the board
+     * @return The move as calculated by the minimax algorithm
+     */
+    private Move chooseMove(Board board) {
+        if (transpositionTable != null) {
+            transpositionTable.newSearch();
+        }
+        aborted = false;
+        nodes = 0;
+        nodesUntilTimeCheck = 1024;
+        // the budget counts from here, so that the book and the solver spend from it as much as the search does
+        deadline = System.nanoTime() + timeBudget * 1_000_000;
+
+        if (openingBook != null) {
+            int square = openingBook.lookup(board, playerColour);
+            if (square >= 0) {
+                // the book knows the move, but not what it is worth
+                source = "book";
+                completedDepth = 0;
+                return new Move(square / 8, square % 8, 0);
+            }
+        }
+
+        int emptySquares = 64 - board.getScore(Board.WHITE) - board.getScore(Board.BLACK);
+        if (emptySquares <= endgameThreshold) {
+            Move solved = solve(board);
+            if (solved != null) {
+                source = "solver";
+                completedDepth = emptySquares;
+                return solved;
+            }
+        }
+
+        source = "search";
+        if (timeBudget == 0 && probCut == null) {
+            searchDepth = maxDepth;
+            completedDepth = maxDepth;
+            Move move = search(board);
+            return aborted ? null : move;
+        }
+
+        /* the selective search deepens iteratively even without a budget, as it relies on the move ordering and the
+         * aspiration windows each iteration leaves in the transposition table for the next */
+        int depthLimit = Math.min(maxDepth, emptySquares);   // there is nothing to gain from searching past the end of the game
+        Move bestMove = null;
+        completedDepth = 0;
+        for (searchDepth = 1; searchDepth <= depthLimit; ++searchDepth) {
+            Move move = search(board);
+            // an iteration that ran out of time has not looked at every move, so its result is thrown away
+            if (aborted) {
+                break;
+            }
+            bestMove = move;
+            completedDepth = searchDepth;
+            if (iterationListener != null) {
+                iterationListener.iterationFinished(searchDepth, move, nodes);
+            }
+            if ((timeBudget > 0 && System.nanoTime() >= deadline) || stopped.get()) {
+                break;
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Solves the rest of the game exactly.
+     * @param board The current state of the board
+     * @return The best move, valued with the final disk difference from white's point of view, or null if the player
+     * has no move to play, was stopped or ran out of time.
+     */
+    private Move solve(Board board) {
+        if (endgameSolver == null) {
+            endgameSolver = new EndgameSolver(endgameMegabytes);
+            endgameSolver.setStopFlag(stopped);
+        }
+        endgameSolver.setDeadline(timeBudget > 0 ? deadline : 0);
+        int margin = endgameSolver.solve(board, playerColour);
+        nodes = endgameSolver.getNodeCount();
+        int square = endgameSolver.getBestSquare();
+        // a solve that was stopped, or ran out of time, proves nothing, and the search takes over
+        if (square < 0 || endgameSolver.wasStopped()) {
+            return null;
+        }
+        return new Move(square / 8, square % 8, margin * playerColour);
+    }
+
+    /**
+     * Runs a single search of the board to searchDepth.
+     * @param board The current state of the board
+     * @return The move as calculated by the minimax algorithm
+     */
+    private Move search(Board board) {
+        // the principal variation search splits its nodes between the threads itself
+        if (principalVariationSearch) {
+            return aspirationSearch(new Board(board));
+        }
+        if (pool != null) {
+            return Move.unpack(splitSearch(new Board(board), 0, Integer.MIN_VALUE, Integer.MAX_VALUE, playerColour));
+        }
+
         if (playerColour == Board.WHITE) {
             // if the AI has the white disks, it wants to maximise the value it gets out of its move (since Board.WHITE == 1)
-            return max(new Board(board), 0, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            return Move.unpack(max(new Board(board), 0, Integer.MIN_VALUE, Integer.MAX_VALUE));
         } else {
             // similarly, if the AI has the black disks, it wants to minimise the value it gets out of its move (since Board.BLACK == -1)
-            return min(new Board(board), 0, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            return Move.unpack(min(new Board(board), 0, Integer.MIN_VALUE, Integer.MAX_VALUE));
         }
     }
 
     /**
+     * The parallel version of max and min. The first (most promising) child of the node is searched by the calling
+     * thread, splitting its own children in turn, while the rest of the children (the "young brothers") wait until it
+     * has finished. They are then searched in parallel, each by a helper on a copy of the board, with a window that
+     * includes the bound set by the first child and is tightened further by every helper that finds a better move.
      * @param board The instance of the board that will be explored in this call of the method.
      * @param depth The depth we are currently at.
      * @param alpha The alpha value as has been calculated between min & max as of this call of the method.
      * @param beta The beta value as has been calculated between min & max as of this call of the method.
-     * @return The move the maximiser node is predicted to make given the current state of the board.
+     * @param colour The colour of the player to move, Board.WHITE to maximise or Board.BLACK to minimise.
+     * @return The move the player to move is predicted to make given the current state of the board, packed (see
+     * Move.pack).
      */
-    public Move max(Board board, int depth, int alpha, int beta) {
-        ArrayList<Board> children = new ArrayList<>(board.getChildren(Board.WHITE));    // as white has called max
+    private long splitSearch(Board board, int depth, int alpha, int beta, int colour) {
+        long moves = board.legalMoves(colour);
+        boolean maximising = colour == Board.WHITE;
+        if (depth == searchDepth || moves == 0 || searchDepth - depth < MIN_SPLIT_DEPTH) {
+            return maximising ? max(board, depth, alpha, beta) : min(board, depth, alpha, beta);
+        }
+
+        ++nodes;
+        if (stripe != null) {
+            ++stripe.nodes[depth];
+        }
+        long key = board.getZobristKey(colour);
+        long entry = transpositionTable != null ? transpositionTable.probe(key) : 0;
+        int moveCount = orderMoves(moves, colour, depth, entry != 0 ? TranspositionTable.move(entry) : -1);
+        int[] moveList = moveLists[depth];
+        int firstSquare = moveList[0];
+        int alphaAtStart = alpha;
+        int betaAtStart = beta;
+
+        // the eldest brother is searched first, and alone
+        board.playMove(firstSquare, colour);
+        long firstMove = splitSearch(board, depth + 1, alpha, beta, -colour);
+        board.undoMove();
+        if (aborted) {
+            return firstMove;
+        }
+        int bestValue = Move.value(firstMove);
+        int bestSquare = firstSquare;
+
+        if (maximising ? bestValue < beta : bestValue > alpha) {
+            if (maximising) {
+                alpha = Math.max(alpha, bestValue);
+            } else {
+                beta = Math.min(beta, bestValue);
+            }
+
+            // the young brothers are searched in parallel once the eldest has set the bound they are searched against
+            AtomicInteger sharedBound = new AtomicInteger(maximising ? alpha : beta);
+            int fixedAlpha = alpha;
+            int fixedBeta = beta;
+            long bestMove = searchYoungBrothers(board, colour, moveList, moveCount, maximising ? 1 : -1,
+                    Move.pack(bestSquare, bestValue), (helper, child, cutoff) -> {
+                        int helperAlpha = maximising ? sharedBound.get() : fixedAlpha;
+                        int helperBeta = maximising ? fixedBeta : sharedBound.get();
+                        int value = Move.value(maximising ? helper.min(child, depth + 1, helperAlpha, helperBeta)
+                                : helper.max(child, depth + 1, helperAlpha, helperBeta));
+                        if (!helper.aborted) {
+                            if (maximising) {
+                                sharedBound.accumulateAndGet(value, Math::max);
+                                if (value >= fixedBeta) {
+                                    cutoff.set(true);
+                                }
+                            } else {
+                                sharedBound.accumulateAndGet(value, Math::min);
+                                if (value <= fixedAlpha) {
+                                    cutoff.set(true);
+                                }
+                            }
+                        }
+                        return value;
+                    });
+            if (aborted) {
+                return Move.pack(-1, 0);
+            }
+            bestValue = Move.value(bestMove);
+            bestSquare = Move.square(bestMove);
+        }
+
+        if (transpositionTable != null) {
+            int bound = maximising
+                    ? (bestValue >= betaAtStart ? TranspositionTable.LOWER_BOUND
+                            : bestValue <= alphaAtStart ? TranspositionTable.UPPER_BOUND : TranspositionTable.EXACT)
+                    : (bestValue <= alphaAtStart ? TranspositionTable.UPPER_BOUND
+                            : bestValue >= betaAtStart ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT);
+            transpositionTable.store(key, searchDepth - depth, bound, bestValue, bestSquare);
+        }
+        return Move.pack(bestSquare, bestValue);
+    }
+
+    /**
+     * How a helper searches a young brother of a split node.
+     */
+    private interface YoungBrotherSearch
+    {
+        /**
+         * @param helper The helper searching, brought up to date with the search of its parent (see follow).
+         * @param child A copy of the board, with the move of the young brother made.
+         * @param cutoff To set once the value found makes the rest of the young brothers unnecessary.
+         * @return The value of the young brother, meaningless if the helper was aborted.
+         */
+        int search(Player helper, Board child, AtomicBoolean cutoff);
+    }
+
+    /**
+     * Searches the young brothers of a split node in parallel, each on a copy of the board, by the helper of whichever
+     * thread of the pool picks it up. Sets aborted if a helper ran out of time or was stopped.
+     * @param board The board of the node.
+     * @param colour The colour of the player to move.
+     * @param moveList The ordered moves of the node, the eldest brother first.
+     * @param moveCount The number of moves.
+     * @param sign 1 if a higher value is better for the player to move, -1 if a lower one is.
+     * @param eldest The move and value of the eldest brother, packed (see Move.pack).
+     * @param search How a helper searches a young brother.
+     * @return The best move of the node, packed. A young brother only replaces the best move if it is strictly better.
+     */
+    private long searchYoungBrothers(Board board, int colour, int[] moveList, int moveCount, int sign, long eldest,
+                                     YoungBrotherSearch search) {
+        AtomicBoolean cutoff = new AtomicBoolean();
+        AtomicLong helperNodes = new AtomicLong();
+        ArrayList<ForkJoinTask<Integer>> tasks = new ArrayList<>(moveCount - 1);
+        for (int i = 1; i < moveCount; ++i) {
+            Board child = new Board(board);
+            child.playMove(moveList[i], colour);
+            tasks.add(pool.submit(() -> {
+                Player helper = ((HelperThread) Thread.currentThread()).helper;
+                helper.follow(this, cutoff);
+                int value = search.search(helper, child, cutoff);
+                helperNodes.addAndGet(helper.nodes);
+                if (stripe != null) {
+                    // helpers may finish at once, and the parent only reads its stripe once every task has been joined
+                    synchronized (stripe) {
+                        stripe.add(helper.stripe);
+                    }
+                }
+                return helper.aborted ? null : value;
+            }));
+        }
+
+        long best = eldest;
+        for (int i = 0; i < tasks.size(); ++i) {
+            Integer value = tasks.get(i).join();
+            if (value == null) {
+                // a helper that was not cancelled because of a cutoff can only have stopped because time ran out
+                if (!cutoff.get()) {
+                    aborted = true;
+                }
+                continue;
+            }
+            if (sign * value > sign * Move.value(best)) {
+                best = Move.pack(moveList[i + 1], value);
+            }
+        }
+        nodes += helperNodes.get();
+        return best;
+    }
+
+    /**
+     * Brings a helper up to date with the search of its parent, before it searches a young brother of a split node.
+     * @param parent The player whose search is being split.
+     * @param cancelled Set once the results of the helper are no longer needed.
+     */
+    private void follow(Player parent, AtomicBoolean cancelled) {
+        this.searchDepth = parent.searchDepth;
+        this.transpositionTable = parent.transpositionTable;
+        this.timeBudget = parent.timeBudget;
+        this.deadline = parent.deadline;
+        this.moveOrdering = parent.moveOrdering;
+        this.patternEvaluator = parent.patternEvaluator;
+        this.probCut = parent.probCut;
+        this.statistics = parent.statistics;
+        if (parent.stripe == null) {
+            this.stripe = null;
+        } else if (this.stripe == null) {
+            this.stripe = new SearchStatistics.Stripe();
+        }
+        this.cancelled = cancelled;
+        this.aborted = false;
+        this.nodes = 0;
+        this.nodesUntilTimeCheck = 1024;
+    }
+
+    /**
+     * Explores every move of the white player by making it on the board, searching the resulting position and taking it
+     * back again, so the board is left exactly as it was found once the method returns.
+     * @param board The instance of the board that will be explored in this call of the method.
+     * @param depth The depth we are currently at.
+     * @param alpha The alpha value as has been calculated between min & max as of this call of the method.
+     * @param beta The beta value as has been calculated between min & max as of this call of the method.
+     * @return The move the maximiser node is predicted to make given the current state of the board, packed (see
+     * Move.pack) so that searching a node allocates nothing.
+     */
+    private long max(Board board, int depth, int alpha, int beta) {
+        ++nodes;
+        if (stripe != null) {
+            ++stripe.nodes[depth];
+        }
+        long moves = board.legalMoves(Board.WHITE);    // as white has called max
 
         /* if we have either reached the max depth allowed or reached a terminal board state, we return
-         * the move that brought the board to this state, combined with the value of its heuristic function */
-        if (depth == maxDepth || board.isTerminal() || children.isEmpty()) {
-            return new Move(board.getLastMove().getRow(), board.getLastMove().getCol(), board.evaluate());
+         * the move that brought the board to this state, combined with the value of its heuristic function.
+         * (A terminal board never has any moves for white, so checking the moves covers that case as well.) */
+        if (depth == searchDepth || moves == 0) {
+            return leaf(board);
+        }
+        if (isOutOfTime()) {
+            return Move.pack(-1, 0);
         }
 
-        Move maxMove = new Move(Integer.MIN_VALUE); // to be updated as the child nodes are explored
-        int maxValue = maxMove.getValue();
+        /* if the same position (with the same player to move) has already been searched at least as deep, possibly
+         * through a different order of moves, its stored result can be used instead of searching it again */
+        long key = board.getZobristKey(Board.WHITE);
+        long entry = transpositionTable != null ? transpositionTable.probe(key) : 0;
+        if (entry != 0 && depth > 0 && isUsable(entry, searchDepth - depth, alpha, beta)) {
+            if (stripe != null) {
+                ++stripe.transpositionHits;
+            }
+            return Move.pack(-1, TranspositionTable.value(entry));
+        }
+        int moveCount = orderMoves(moves, Board.WHITE, depth, entry != 0 ? TranspositionTable.move(entry) : -1);
+        int[] moveList = moveLists[depth];
+        int alphaAtStart = alpha;
+
+        // to be updated as the child nodes are explored
+        int maxSquare = -1;
+        int maxValue = Integer.MIN_VALUE;
+
+        for (int i = 0; i < moveCount; ++i) {
+            int square = moveList[i];
 
-        for (Board child : children) {
             // fetch the move that min is predicted to play (from the level just below this one, hence depth+1)
-            Move currentMove = min(child, depth+1, alpha, beta);
-            int currentValue = currentMove.getValue();
+            board.playMove(square, Board.WHITE);
+            long currentMove = min(board, depth+1, alpha, beta);
+            board.undoMove();
+            if (aborted) {
+                // the value is meaningless, and must not be stored in the transposition table either
+                return Move.pack(maxSquare, maxValue);
+            }
+            int currentValue = Move.value(currentMove);
             if (currentValue >= maxValue) {
-                // if the move we are currently exploring has a greater value according to our heuristic function, update maxMove accordingly
+                // if the move we are currently exploring has a greater value according to our heuristic function, keep it
                 if (currentValue > maxValue) {
-                    maxMove.setRow(child.getLastMove().getRow());
-                    maxMove.setCol(child.getLastMove().getCol());
-                    maxMove.setValue(currentValue);
+                    maxSquare = square;
                     maxValue = currentValue;
 
                     /* pruning: If the value of the currently recorded best move is greater than (or equal to) beta, we
                      * have no reason to further check this node or its children, as they will never be returned to the
                      * parent no matter what. */
                     if (maxValue >= beta) {
+                        recordCutoff(Board.WHITE, depth, square);
+                        if (stripe != null) {
+                            stripe.cutoff(depth, i);
+                        }
                         break;
                     }
 
@@ -77,14 +759,18 @@ public class Player
                      * If the hypothetical coin landed on heads, we keep the new value over the current max.  */
                     boolean heads = random.nextBoolean();
                     if (heads) {
-                        maxMove.setRow(child.getLastMove().getRow());
-                        maxMove.setCol(child.getLastMove().getCol());
-                        maxMove.setValue(currentValue);
+                        maxSquare = square;
                     }
                 }
             }
         }
-        return maxMove;
+
+        if (transpositionTable != null) {
+            int bound = maxValue >= beta ? TranspositionTable.LOWER_BOUND
+                    : maxValue <= alphaAtStart ? TranspositionTable.UPPER_BOUND : TranspositionTable.EXACT;
+            transpositionTable.store(key, searchDepth - depth, bound, maxValue, maxSquare);
+        }
+        return Move.pack(maxSquare, maxValue);
     }
 
     /**
@@ -93,36 +779,69 @@ public class Player
      * @param depth The depth we are currently at.
      * @param alpha The alpha value as has been calculated between min & max as of this call of the method.
      * @param beta The beta value as has been calculated between min & max as of this call of the method.
-     * @return The move the minimiser node is predicted to make given the current state of the board.
+     * @return The move the minimiser node is predicted to make given the current state of the board, packed (see
+     * Move.pack).
      */
-    public Move min(Board board, int depth, int alpha, int beta) {
-        ArrayList<Board> children = board.getChildren(Board.BLACK); // as black has called min
+    private long min(Board board, int depth, int alpha, int beta) {
+        ++nodes;
+        if (stripe != null) {
+            ++stripe.nodes[depth];
+        }
+        long moves = board.legalMoves(Board.BLACK); // as black has called min
 
         /* if we have either reached the max depth allowed or reached a terminal board state, we return
          * the move that brought the board to this state, combined with the value of its heuristic function */
-        if (board.isTerminal() || depth == this.maxDepth || children.isEmpty()) {
-            return new Move(board.getLastMove().getRow(), board.getLastMove().getCol(), board.evaluate());
+        if (depth == searchDepth || moves == 0) {
+            return leaf(board);
+        }
+        if (isOutOfTime()) {
+            return Move.pack(-1, 0);
+        }
+
+        /* if the same position (with the same player to move) has already been searched at least as deep, possibly
+         * through a different order of moves, its stored result can be used instead of searching it again */
+        long key = board.getZobristKey(Board.BLACK);
+        long entry = transpositionTable != null ? transpositionTable.probe(key) : 0;
+        if (entry != 0 && depth > 0 && isUsable(entry, searchDepth - depth, alpha, beta)) {
+            if (stripe != null) {
+                ++stripe.transpositionHits;
+            }
+            return Move.pack(-1, TranspositionTable.value(entry));
         }
+        int moveCount = orderMoves(moves, Board.BLACK, depth, entry != 0 ? TranspositionTable.move(entry) : -1);
+        int[] moveList = moveLists[depth];
+        int betaAtStart = beta;
 
-        Move minMove = new Move(Integer.MAX_VALUE); // to be updated as the child nodes are explored
-        int minValue = minMove.getValue();
+        // to be updated as the child nodes are explored
+        int minSquare = -1;
+        int minValue = Integer.MAX_VALUE;
+
+        for (int i = 0; i < moveCount; ++i) {
+            int square = moveList[i];
 
-        for (Board child : children) {
             // fetch the move that max is predicted to play (from the level just below this one, hence depth+1)
-            Move currentMove = max(child, depth+1, alpha, beta);
-            int currentValue = currentMove.getValue();
+            board.playMove(square, Board.BLACK);
+            long currentMove = max(board, depth+1, alpha, beta);
+            board.undoMove();
+            if (aborted) {
+                // the value is meaningless, and must not be stored in the transposition table either
+                return Move.pack(minSquare, minValue);
+            }
+            int currentValue = Move.value(currentMove);
             if (currentValue <= minValue) {
-                // if the move we are currently exploring has a smaller value according to our heuristic function, make it the new minMove
+                // if the move we are currently exploring has a smaller value according to our heuristic function, keep it
                 if (currentValue < minValue) {
-                    minMove.setRow(child.getLastMove().getRow());
-                    minMove.setCol(child.getLastMove().getCol());
-                    minMove.setValue(currentValue);
+                    minSquare = square;
                     minValue = currentValue;
 
                     /* pruning: If the value of the currently recorded best move is smaller than (or equal to) alpha, we
                      * have no reason to further check this node or its children, as they will never be returned to the
                      * parent no matter what. */
                     if (minValue <= alpha) {
+                        recordCutoff(Board.BLACK, depth, square);
+                        if (stripe != null) {
+                            stripe.cutoff(depth, i);
+                        }
                         break;
                     }
                     beta = Math.min(beta, minValue);
@@ -131,13 +850,366 @@ public class Player
                      * of opposites, we will be naming this boolean variable "tails".      */
                     boolean tails = random.nextBoolean();
                     if (tails) {
-                        minMove.setRow(child.getLastMove().getRow());
-                        minMove.setCol(child.getLastMove().getCol());
-                        minMove.setValue(currentValue);
+                        minSquare = square;
+                    }
+                }
+            }
+        }
+
+        if (transpositionTable != null) {
+            int bound = minValue <= alpha ? TranspositionTable.UPPER_BOUND
+                    : minValue >= betaAtStart ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT;
+            transpositionTable.store(key, searchDepth - depth, bound, minValue, minSquare);
+        }
+        return Move.pack(minSquare, minValue);
+    }
+
+    /**
+     * Searches the root with the principal variation search. The window starts narrow around the value the transposition
+     * table holds for the position (usually from the previous iteration, or from the search of an earlier move), and
+     * is widened on the side it failed on until the value falls inside it.
+     * @param board The current state of the board
+     * @return The best move, valued from white's point of view as max and min value it.
+     */
+    private Move aspirationSearch(Board board) {
+        if (board.legalMoves(playerColour) == 0) {
+            return Move.unpack(leaf(board));
+        }
+
+        int alpha = -INFINITY;
+        int beta = INFINITY;
+        long entry = transpositionTable != null ? transpositionTable.probe(board.getZobristKey(playerColour)) : 0;
+        if (entry != 0) {
+            int expected = playerColour * TranspositionTable.value(entry);
+            alpha = (int) Math.max(-INFINITY, (long) expected - ASPIRATION_WINDOW);
+            beta = (int) Math.min(INFINITY, (long) expected + ASPIRATION_WINDOW);
+        }
+
+        long window = ASPIRATION_WINDOW;
+        while (true) {
+            int value = principalVariationSearch(board, 0, alpha, beta, playerColour);
+            if (aborted) {
+                return new Move(0);
+            }
+            // a value outside the window is only a bound, so the side it failed on is widened and the root searched again
+            if (value <= alpha && alpha > -INFINITY) {
+                alpha = (int) Math.max(-INFINITY, value - window);
+            } else if (value >= beta && beta < INFINITY) {
+                beta = (int) Math.min(INFINITY, value + window);
+            } else {
+                return new Move(rootSquare / 8, rootSquare % 8, playerColour * value);
+            }
+            window *= 2;
+        }
+    }
+
+    /**
+     * The principal variation search, in its negamax form: a single method for both players, which returns the value
+     * of the node for the player to move (the heuristic function multiplied by their colour). Values are stored in the
+     * transposition table from white's point of view, like those of max and min, so that the two can share a table.
+     * @param board The instance of the board that will be explored in this call of the method.
+     * @param depth The depth we are currently at.
+     * @param alpha The lower bound of the window, for the player to move.
+     * @param beta The upper bound of the window, for the player to move.
+     * @param colour The colour of the player to move.
+     * @return The value of the node for the player to move. A value at or below alpha is an upper bound of the exact
+     * value, and one at or above beta a lower bound. At the root, the best move is left in rootSquare.
+     */
+    private int principalVariationSearch(Board board, int depth, int alpha, int beta, int colour) {
+        ++nodes;
+        if (stripe != null) {
+            ++stripe.nodes[depth];
+        }
+        long moves = board.legalMoves(colour);
+        // the same leaves as max and min, so that both searches find the same value
+        if (depth == searchDepth || moves == 0) {
+            return colour * evaluate(board);
+        }
+        if (isOutOfTime()) {
+            return 0;
+        }
+
+        // the bounds stored in the table are from white's point of view, so black's window is turned around to use them
+        long key = board.getZobristKey(colour);
+        long entry = transpositionTable != null ? transpositionTable.probe(key) : 0;
+        if (entry != 0 && depth > 0 && isUsable(entry, searchDepth - depth,
+                colour == Board.WHITE ? alpha : -beta, colour == Board.WHITE ? beta : -alpha)) {
+            if (stripe != null) {
+                ++stripe.transpositionHits;
+            }
+            return colour * TranspositionTable.value(entry);
+        }
+        if (probCut != null && depth > 0) {
+            int cut = probCut(board, depth, alpha, beta, colour);
+            if (cut != 0 || aborted) {
+                if (stripe != null && cut != 0) {
+                    ++stripe.probCuts;
+                }
+                return cut > 0 ? beta : alpha;
+            }
+        }
+        int moveCount = orderMoves(moves, colour, depth, entry != 0 ? TranspositionTable.move(entry) : -1);
+        int[] moveList = moveLists[depth];
+        int alphaAtStart = alpha;
+
+        int bestValue = -INFINITY;
+        int bestSquare = moveList[0];
+        for (int i = 0; i < moveCount; ++i) {
+            if (i == 1 && pool != null && searchDepth - depth >= MIN_SPLIT_DEPTH) {
+                // the eldest brother has set the bound, and the young brothers are searched in parallel against it
+                long bestMove = splitYoungBrothers(board, depth, alpha, beta, colour, moveList, moveCount,
+                        Move.pack(bestSquare, bestValue));
+                if (aborted) {
+                    return 0;
+                }
+                bestValue = Move.value(bestMove);
+                bestSquare = Move.square(bestMove);
+                if (bestValue >= beta) {
+                    recordCutoff(colour, depth, bestSquare);
+                }
+                break;
+            }
+            int square = moveList[i];
+            board.playMove(square, colour);
+            int value;
+            if (i == 0) {
+                value = -principalVariationSearch(board, depth + 1, -beta, -alpha, -colour);
+            } else {
+                /* every later move is expected to be worse than the best so far, which a null window proves cheaply.
+                 * Only if it turns out better does it need its exact value, from a search with the full window. */
+                value = -principalVariationSearch(board, depth + 1, -alpha - 1, -alpha, -colour);
+                if (value > alpha && value < beta && !aborted) {
+                    value = -principalVariationSearch(board, depth + 1, -beta, -alpha, -colour);
+                }
+            }
+            board.undoMove();
+            if (aborted) {
+                // the value is meaningless, and must not be stored in the transposition table either
+                return 0;
+            }
+
+            if (value > bestValue) {
+                bestValue = value;
+                bestSquare = square;
+                if (value >= beta) {
+                    recordCutoff(colour, depth, square);
+                    if (stripe != null) {
+                        stripe.cutoff(depth, i);
                     }
+                    break;
+                }
+                alpha = Math.max(alpha, value);
+            }
+        }
+
+        if (transpositionTable != null) {
+            int bound = bestValue >= beta ? TranspositionTable.LOWER_BOUND
+                    : bestValue <= alphaAtStart ? TranspositionTable.UPPER_BOUND : TranspositionTable.EXACT;
+            // a bound for black is the opposite bound for white
+            if (colour == Board.BLACK && bound != TranspositionTable.EXACT) {
+                bound = bound == TranspositionTable.LOWER_BOUND ? TranspositionTable.UPPER_BOUND
+                        : TranspositionTable.LOWER_BOUND;
+            }
+            transpositionTable.store(key, searchDepth - depth, bound, colour * bestValue, bestSquare);
+        }
+        if (depth == 0) {
+            rootSquare = bestSquare;
+        }
+        return bestValue;
+    }
+
+    /**
+     * Searches the young brothers of a node of principalVariationSearch in parallel (see searchYoungBrothers). Each
+     * is searched with a null window at the best value found so far, and again with the full window if it turns out
+     * better, as principalVariationSearch would.
+     * @param alpha The lower bound of the window, raised by the eldest brother.
+     * @param eldest The move and value of the eldest brother, packed (see Move.pack).
+     * @return The best move of the node and its value for the player to move, packed.
+     */
+    private long splitYoungBrothers(Board board, int depth, int alpha, int beta, int colour, int[] moveList,
+                                    int moveCount, long eldest) {
+        AtomicInteger sharedAlpha = new AtomicInteger(alpha);
+        return searchYoungBrothers(board, colour, moveList, moveCount, 1, eldest, (helper, child, cutoff) -> {
+            int bound = sharedAlpha.get();
+            int value = -helper.principalVariationSearch(child, depth + 1, -bound - 1, -bound, -colour);
+            if (value > bound && value < beta && !helper.aborted) {
+                value = -helper.principalVariationSearch(child, depth + 1, -beta, -bound, -colour);
+            }
+            if (!helper.aborted) {
+                sharedAlpha.accumulateAndGet(value, Math::max);
+                if (value >= beta) {
+                    cutoff.set(true);
+                }
+            }
+            return value;
+        });
+    }
+
+    /**
+     * Predicts the result of searching a node to its full depth from a search to the check depth of ProbCut, the
+     * check search itself being selective as well. The window of the check search is a null window at the bound the
+     * prediction has to clear, so only the side of the bound it falls on is found out.
+     * @return 1 if the node is predicted to fail high, -1 if it is predicted to fail low, and 0 if it has to be searched.
+     */
+    private int probCut(Board board, int depth, int alpha, int beta, int colour) {
+        int remainingDepth = searchDepth - depth;
+        int stage = ProbCut.stage(board.getScore(Board.WHITE) + board.getScore(Board.BLACK));
+        if (!probCut.hasParameters(stage, remainingDepth)) {
+            return 0;
+        }
+
+        // the check search is the same search with a nearer horizon, so it shares the transposition table consistently
+        int fullSearchDepth = searchDepth;
+        searchDepth = depth + ProbCut.checkDepth(remainingDepth);
+        int result = 0;
+        double highBound = Math.ceil(probCut.highBound(stage, remainingDepth, beta));
+        if (beta < INFINITY && highBound < INFINITY) {
+            int bound = (int) highBound;
+            if (principalVariationSearch(board, depth, bound - 1, bound, colour) >= bound) {
+                result = 1;
+            }
+        }
+        double lowBound = Math.floor(probCut.lowBound(stage, remainingDepth, alpha));
+        if (result == 0 && !aborted && alpha > -INFINITY && lowBound > -INFINITY) {
+            int bound = (int) lowBound;
+            if (principalVariationSearch(board, depth, bound, bound + 1, colour) <= bound) {
+                result = -1;
+            }
+        }
+        searchDepth = fullSearchDepth;
+        return result;
+    }
+
+    /**
+     * Counts the node and, every 1024 nodes, checks whether the time budget has run out or the player was stopped (or,
+     * for a helper thread, whether its result is no longer needed). The first iteration is always allowed to finish, so
+     * that there is a move to play however small the budget is.
+     * @return True if the search has to be abandoned.
+     */
+    private boolean isOutOfTime() {
+        if (--nodesUntilTimeCheck > 0) {
+            return aborted;
+        }
+        nodesUntilTimeCheck = 1024;
+        if (searchDepth > 1 && ((timeBudget > 0 && System.nanoTime() >= deadline) || stopped.get()
+                || (cancelled != null && cancelled.get()))) {
+            aborted = true;
+        }
+        return aborted;
+    }
+
+    /**
+     * Fills the move list of the given depth with the moves of a node, in the order they should be searched in (see
+     * setMoveOrdering).
+     * @param moves The mask of the legal moves of the node.
+     * @param colour The colour of the player to move.
+     * @param depth The depth of the node.
+     * @param hashSquare The square of the best move stored in the transposition table for the node, -1 if there is none.
+     * @return The number of moves in the list.
+     */
+    private int orderMoves(long moves, int colour, int depth, int hashSquare) {
+        int[] moveList = moveLists[depth];
+        int[] scores = moveScores[depth];
+        int[] killers = killerMoves[depth];
+        int[] historyScores = history[colour == Board.WHITE ? 0 : 1];
+        int count = 0;
+
+        for (; moves != 0; moves &= moves - 1) {
+            int square = Long.numberOfTrailingZeros(moves);
+            int score = 0;
+            if (moveOrdering) {
+                long bit = 1L << square;
+                if (square == hashSquare) {
+                    score = HASH_MOVE_SCORE;
+                } else if ((bit & CORNER_SQUARES) != 0) {
+                    score = CORNER_SCORE;
+                } else if (square == killers[0] || square == killers[1]) {
+                    score = square == killers[0] ? KILLER_SCORE + 1 : KILLER_SCORE;
+                } else if ((bit & X_AND_C_SQUARES) != 0) {
+                    score = X_AND_C_SCORE + historyScores[square];
+                } else {
+                    score = historyScores[square];
                 }
             }
+
+            // insertion sort, highest score first. Moves with equal scores keep their row-major order.
+            int i = count++;
+            while (i > 0 && scores[i - 1] < score) {
+                moveList[i] = moveList[i - 1];
+                scores[i] = scores[i - 1];
+                --i;
+            }
+            moveList[i] = square;
+            scores[i] = score;
+        }
+        return count;
+    }
+
+    /**
+     * @return A table of killer moves for every depth, with no moves recorded yet.
+     */
+    private static int[][] newKillerMoves() {
+        int[][] killerMoves = new int[MAX_PLY][2];
+        for (int[] killers : killerMoves) {
+            Arrays.fill(killers, -1);
         }
-        return minMove;
+        return killerMoves;
+    }
+
+    /**
+     * Remembers a move that caused a cutoff, as a killer move of its depth and in the history of its colour.
+     */
+    private void recordCutoff(int colour, int depth, int square) {
+        int[] killers = killerMoves[depth];
+        if (killers[0] != square) {
+            killers[1] = killers[0];
+            killers[0] = square;
+        }
+
+        int[] historyScores = history[colour == Board.WHITE ? 0 : 1];
+        int remainingDepth = searchDepth - depth;
+        historyScores[square] += remainingDepth * remainingDepth;
+        // keep the history below the killer moves by halving all of it once a score grows too large
+        if (historyScores[square] >= MAX_HISTORY_SCORE) {
+            for (int i = 0; i < historyScores.length; ++i) {
+                historyScores[i] /= 2;
+            }
+        }
+    }
+
+    /**
+     * @param entry An entry of the transposition table.
+     * @param remainingDepth The depth the position still has to be searched to.
+     * @param alpha The alpha value of the current call.
+     * @param beta The beta value of the current call.
+     * @return True if the stored value can be returned as it is, instead of searching the position again.
+     */
+    private static boolean isUsable(long entry, int remainingDepth, int alpha, int beta) {
+        if (TranspositionTable.depth(entry) < remainingDepth) {
+            return false;
+        }
+        int value = TranspositionTable.value(entry);
+        return switch (TranspositionTable.bound(entry)) {
+            case TranspositionTable.EXACT -> true;
+            case TranspositionTable.LOWER_BOUND -> value >= beta;
+            default -> value <= alpha;
+        };
+    }
+
+    /**
+     * @param board The board at a leaf of the search.
+     * @return The move that brought the board to this state, combined with the value of its heuristic function and
+     * packed (see Move.pack).
+     */
+    private long leaf(Board board) {
+        return Move.pack(board.getLastSquare(), evaluate(board));
+    }
+
+    /**
+     * @param board The board at a leaf of the search.
+     * @return The value of its heuristic function, positive if it favours white.
+     */
+    private int evaluate(Board board) {
+        return patternEvaluator != null ? patternEvaluator.evaluate(board) : board.evaluate();
     }
-}
\ No newline at end of file
+}
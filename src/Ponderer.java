@@ -0,0 +1,212 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Lets a player think on its opponent's time. Once the player has moved, start guesses the opponent's reply and has
+ * the player search the position after it on a background thread. When the opponent has actually replied, respond
+ * either keeps that search (a ponder hit), or stops it and searches the actual position (a ponder miss). <br>
+ * On a hit, the search has already been running for as long as the opponent took, so it only goes on for what is left
+ * of the player's time budget, counted from when pondering started (or, without a budget, until it reaches the player's
+ * maximum depth). On a miss, nothing is lost but the time of the opponent: the player still has its transposition
+ * table, killer moves and history, warmed by the search of a closely related position. <br>
+ * The reply expected is the one the transposition table holds for the position, which the search of the player's own
+ * move stored there as the second move of its principal variation. If there is none (after a book move or a solved
+ * position, for instance), the move the heuristic function likes best is taken. <br>
+ * While it ponders, the player searches on another thread, and must not be used for anything else until respond or
+ * cancel has been called.
+ */
+public class Ponderer
+{
+    // pondering is not limited by time: it goes on until the opponent replies, or the player reaches its maximum depth
+    private static final long UNLIMITED_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final Player player;
+    private final ExecutorService executor;
+
+    private Future<Move> pondering;     // the search of the expected position, null when not pondering
+    private Board expected;     // the position after the expected reply
+    private long startNanos;    // when pondering started
+    private long timeBudget;    // the budget of the player, which pondering replaces until it ends
+
+    private int hits;
+    private int misses;
+
+    /**
+     * Creates a ponderer with a background thread of its own, which does not keep the program alive.
+     * @param player The player whose moves are pondered.
+     */
+    public Ponderer(Player player)
+    {
+        this(player, Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ponder");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param player The player whose moves are pondered.
+     * @param executor Where the pondering searches run.
+     */
+    public Ponderer(Player player, ExecutorService executor)
+    {
+        this.player = player;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts pondering, right after the player has moved. Nothing is pondered if the game is over, or if the player
+     * would not be the one to move after the reply (when one of the players has to pass).
+     * @param board The board after the player's move.
+     */
+    public void start(Board board) {
+        cancel();
+        int colour = board.getLastPlayer();
+        int opponent = -colour;
+        if (board.isTerminal() || board.getPlayerToMove() != opponent) {
+            return;
+        }
+        int reply = expectedReply(board, opponent);
+        Board position = new Board(board);
+        position.makeMove(reply / 8, reply % 8, opponent);
+        if (position.isTerminal() || position.getPlayerToMove() != colour) {
+            return;
+        }
+
+        expected = position;
+        timeBudget = player.getTimeBudget();
+        // the player deepens iteratively while it ponders, so that it has a move whenever pondering is cut short
+        player.setTimeBudget(UNLIMITED_MILLIS);
+        player.setStopped(false);
+        startNanos = System.nanoTime();
+        pondering = executor.submit(() -> player.minimax(position));
+    }
+
+    /**
+     * @param board A position.
+     * @return True if the player is pondering that very position, so that respond will be a ponder hit.
+     */
+    public boolean expects(Board board) {
+        return pondering != null && board.equals(expected);
+    }
+
+    /**
+     * Chooses the player's move, once the opponent has replied. Without pondering, this is simply minimax.
+     * @param board The board after the opponent's reply, with the player to move.
+     * @return The move, as minimax would return it.
+     * @throws InterruptedException If the thread is interrupted while it waits for the search.
+     */
+    public Move respond(Board board) throws InterruptedException {
+        if (pondering == null) {
+            return player.minimax(board);
+        }
+        boolean hit = board.equals(expected);
+        if (hit) {
+            long remaining = timeBudget * 1_000_000 - (System.nanoTime() - startNanos);
+            try {
+                if (timeBudget == 0) {
+                    pondering.get();
+                } else if (remaining > 0) {
+                    pondering.get(remaining, TimeUnit.NANOSECONDS);
+                }
+            } catch (TimeoutException e) {
+                // the budget is spent, and the search is stopped below
+            } catch (ExecutionException e) {
+                // finish reports the failure
+            }
+        }
+        Move move = finish();
+        if (hit && move != null) {
+            ++hits;
+            return move;
+        }
+        ++misses;
+        return player.minimax(board);
+    }
+
+    /**
+     * Stops pondering, if the player is, and throws its result away. Nothing is lost by calling it when the player is
+     * not pondering.
+     */
+    public void cancel() {
+        if (pondering == null) {
+            return;
+        }
+        try {
+            finish();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The number of times the reply was the one expected.
+     */
+    public int getHits()
+    {
+        return this.hits;
+    }
+
+    /**
+     * @return The number of times the reply was another one.
+     */
+    public int getMisses()
+    {
+        return this.misses;
+    }
+
+    /**
+     * Stops the pondering search, waits for it and gives the player back its time budget.
+     * @return The best move of the last iteration the search finished.
+     */
+    private Move finish() throws InterruptedException {
+        player.setStopped(true);
+        try {
+            return pondering.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Pondering failed", e.getCause());
+        } finally {
+            // a wait that was interrupted leaves the search stopped, so that it still ends on its own
+            if (pondering.isDone()) {
+                player.setStopped(false);
+            }
+            player.setTimeBudget(timeBudget);
+            pondering = null;
+            expected = null;
+        }
+    }
+
+    /**
+     * @return The square of the reply the opponent is expected to play: the move stored in the player's transposition
+     * table if it is legal, or else the one that leaves the position Board.evaluate values best for the opponent.
+     */
+    private int expectedReply(Board board, int opponent) {
+        long moves = board.legalMoves(opponent);
+        TranspositionTable table = player.getTranspositionTable();
+        if (table != null) {
+            long entry = table.probe(board.getZobristKey(opponent));
+            int square = entry != 0 ? TranspositionTable.move(entry) : -1;
+            if (square >= 0 && (moves & (1L << square)) != 0) {
+                return square;
+            }
+        }
+        Board child = new Board(board);
+        int best = -1;
+        int bestValue = Integer.MIN_VALUE;
+        for (; moves != 0; moves &= moves - 1) {
+            int square = Long.numberOfTrailingZeros(moves);
+            child.playMove(square, opponent);
+            int value = opponent * child.evaluate();
+            child.undoMove();
+            if (value > bestValue) {
+                bestValue = value;
+                best = square;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * A fixed set of positions, reached in games played by the engine, that the search and the board are measured on so
+ * that results can be compared from one change to the next. Each position is written as the moves leading to it from
+ * the start state (see Board.fromMoveList).
+ */
+public final class Positions
+{
+    /** Positions after 10 moves (50 empty squares). */
+    public static final String[] OPENING = {
+            "F5D6C5F4E7B5B4C7E3F8",
+            "D3E3F4C3E2F5F6G6H6F1",
+            "C4C5B6B5C6D7A6A4B7E3",
+            "E6D6C3F6G7F4G4H8C6B6"
+    };
+
+    /** Positions after 26 to 30 moves (34 to 30 empty squares). */
+    public static final String[] MIDGAME = {
+            "F5F4C3C6C5C4B7C7D7A8G3E8B3G6G5C8G7F6D3H8G8F8F7E6B6H7",
+            "C4C3E6F6F5D6C2B2A1G5C6B6H5G4C7H4B7H6F7D8C8B8A8A6E8D3",
+            "F5F6D3G5G6H6H7H8G7F7E8E7H5H4G8C5D6F8B5D8G4C3F4B6B7A5",
+            "C4E3F4G3G4C3F5F6E6H4D3C5G6E7D8E8F8H7F7D7H5H6C6G8H8E2",
+            "F5D6C3D3C2F3C7D7E3F6G3G5G7E7G6H8H5F4G8B8D8F8B7H2H3H4H1H7H6D2",
+            "D3C5C6E3F3C7C4C3B7E6B3A8B5A5C8B6F7E7F6G8D8E8F8B8D6G5G7C2A4F2",
+            "C4C3D3E3C2D6F3G2C5B5F5D2G3G5A6A5A4F2H1B4G6H2H3H4G4F6F4B1H5G7"
+    };
+
+    /** Positions after 38 to 44 moves (22 to 20 empty squares), small enough to be solved exactly. */
+    public static final String[] ENDGAME = {
+            "F5F6E6F4D3C5B6B5G6E7D8A7D6G7F7E8F8D7H8H7H6C7C8H5H4G8B7C3C4G5C6E2G4B4B2B8A6B3",
+            "F5D6C5F6D7C7E7B5A5B6B4F4A7F8D8B8F7G7F3E3F2C6H8E6G4E2D3A6D1G6H7H5C8A8E8G8B7G3",
+            "F5D6C5B6D7F4B5C7E7F7F8G6G3F6B8G4D8C6B7A6A7E6A5H2F3C8H3G8H8A8H1G7E8A4E3G5H7H6",
+            "E6D6C6D7C3F5E8C8E7B6G5F6F7G8G6G7H8H4H5H6F8F3H7D3D8G4G3F2H3B2B8F4C7A5A6A7H2E1",
+            "F5F6D3E3F7G5G6E7H5F8E2H6E8D8H7C5E6F3D7D1B6H4H3B5G7A7D6C6F1E1C1C2C3C4F4B3A4A3C8B8",
+            "F5F6D3C5G7G5G6E7F7H8G8F4D7H6H7D2H4E3H5H3F3G3B5C6C7E6C2D8G4D6D1E8C8F8C4B8B7B3A4B4",
+            "E6D6C7F7C4F3C5C6E3B5B6C8A6B4A4A5G2F5G6H5H7A7A8G5G4H3E8G8G3H1E2D1F4A3C3H2D8H6B8H8",
+            "C4C5E6F5G4F3F6G6H6H7H8D7E7H3C8B4G5E8D8B8D6C6B6C7B7F8G3H5B5A8H4A7F7A6H2G2A3A4E2E3"
+    };
+
+    private Positions() {
+    }
+
+    /**
+     * @param moveLists The positions, written as the moves leading to them.
+     * @return A new board for every position.
+     */
+    public static Board[] boards(String[] moveLists) {
+        Board[] boards = new Board[moveLists.length];
+        for (int i = 0; i < moveLists.length; ++i) {
+            boards[i] = Board.fromMoveList(moveLists[i]);
+        }
+        return boards;
+    }
+}
@@ -0,0 +1,171 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The parameters of Multi-ProbCut, the selective search Player uses to skip moves that are very unlikely to matter. <br>
+ * The value a deep search gives a position is close to a linear function of the value a shallow search of the same
+ * position gives: deep = slope * shallow + intercept, with a normally distributed error of standard deviation sigma.
+ * Before searching a node deeply, the player searches it to the shallow check depth. If the predicted deep value is
+ * above beta (or below alpha) by more than confidence * sigma, it skips the deep search and returns the bound. <br>
+ * The regression differs with the depth and the stage of the game, so there is one set of parameters per remaining
+ * depth (each paired with its own check depth, see checkDepth) and per stage (by the number of disks on the board).
+ * Values are for the player to move, in the scale of the evaluator the parameters were fitted with. The parameters are
+ * fitted by ProbCutCalibration and saved to a file:
+ * <pre>
+ *  header  int magic ("RVPC"), int version, int number of stages, int number of depths
+ *  body    for every stage, and every depth of that stage: float slope, float intercept, float sigma
+ * </pre>
+ * A depth with a sigma of 0 has no parameters, and is never cut.
+ */
+public class ProbCut
+{
+    public static final int STAGES = 6;
+    private static final int DISKS_PER_STAGE = 10;
+
+    /** The smallest remaining depth that is cut. Below it, a check search would cost as much as the search itself. */
+    public static final int MIN_DEPTH = 3;
+    /** One more than the largest remaining depth with parameters. */
+    public static final int MAX_DEPTH = 32;
+
+    /** How many standard deviations the prediction has to clear the window by, unless set otherwise. */
+    public static final double DEFAULT_CONFIDENCE = 1.0;
+
+    private static final int MAGIC = 0x52565043;    // "RVPC"
+    private static final int VERSION = 1;
+
+    private final float[][] slopes = new float[STAGES][MAX_DEPTH];
+    private final float[][] intercepts = new float[STAGES][MAX_DEPTH];
+    private final float[][] sigmas = new float[STAGES][MAX_DEPTH];
+
+    private double confidence = DEFAULT_CONFIDENCE;
+
+    /**
+     * @param depth The remaining depth of a node, at least MIN_DEPTH.
+     * @return The depth the node is searched to first, to predict the value of the deep search. It is about half the
+     * depth, and of the same parity, as the heuristic function tends to favour whoever made the last move.
+     */
+    public static int checkDepth(int depth) {
+        return 2 * (depth / 4) + (depth & 1);
+    }
+
+    /**
+     * @param disks The number of disks on the board.
+     * @return The stage of the game, from 0 to STAGES - 1.
+     */
+    public static int stage(int disks) {
+        return Math.min(STAGES - 1, (disks - 4) / DISKS_PER_STAGE);
+    }
+
+    /**
+     * Sets how sure the prediction has to be before a node is cut. Higher values cut less, and are safer.
+     * @param confidence The number of standard deviations, 1 by default.
+     */
+    public void setConfidence(double confidence)
+    {
+        this.confidence = confidence;
+    }
+
+    /**
+     * @return The number of standard deviations the prediction has to clear the window by.
+     */
+    public double getConfidence()
+    {
+        return this.confidence;
+    }
+
+    /**
+     * Sets the parameters of one depth and stage.
+     * @param stage The stage of the game (see stage).
+     * @param depth The remaining depth, which is predicted from a search to checkDepth(depth).
+     * @param slope The slope of the regression.
+     * @param intercept The intercept of the regression.
+     * @param sigma The standard deviation of its error, 0 to never cut at this depth and stage.
+     */
+    public void setParameters(int stage, int depth, double slope, double intercept, double sigma)
+    {
+        slopes[stage][depth] = (float) slope;
+        intercepts[stage][depth] = (float) intercept;
+        sigmas[stage][depth] = (float) sigma;
+    }
+
+    /**
+     * @return True if there are parameters for the depth and stage, so that nodes there can be cut. A slope that is
+     * not positive is never used, as the bounds divide by it: 0 would make them infinite, and a negative one would
+     * swap them, cutting on the wrong side of the window.
+     */
+    public boolean hasParameters(int stage, int depth) {
+        return depth >= MIN_DEPTH && depth < MAX_DEPTH && sigmas[stage][depth] > 0 && slopes[stage][depth] > 0;
+    }
+
+    /**
+     * The shallow value at or above which the deep search is predicted to fail high.
+     * @param stage The stage of the game, for which hasParameters(stage, depth) must be true.
+     * @param depth The remaining depth.
+     * @param beta The upper bound of the window of the node.
+     * @return The smallest shallow value that predicts a deep value of at least beta with the required confidence.
+     */
+    public double highBound(int stage, int depth, int beta) {
+        return (beta + confidence * sigmas[stage][depth] - intercepts[stage][depth]) / slopes[stage][depth];
+    }
+
+    /**
+     * The shallow value at or below which the deep search is predicted to fail low.
+     * @param stage The stage of the game, for which hasParameters(stage, depth) must be true.
+     * @param depth The remaining depth.
+     * @param alpha The lower bound of the window of the node.
+     * @return The largest shallow value that predicts a deep value of at most alpha with the required confidence.
+     */
+    public double lowBound(int stage, int depth, int alpha) {
+        return (alpha - confidence * sigmas[stage][depth] - intercepts[stage][depth]) / slopes[stage][depth];
+    }
+
+    /**
+     * Loads the parameters written by save.
+     * @param path The file to read.
+     * @return The parameters of the file, with the default confidence.
+     * @throws IOException If the file cannot be read, or does not hold parameters for these stages and depths.
+     */
+    public static ProbCut load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != STAGES
+                    || in.readInt() != MAX_DEPTH) {
+                throw new IOException("Not a ProbCut parameters file: " + path);
+            }
+            ProbCut probCut = new ProbCut();
+            for (int stage = 0; stage < STAGES; ++stage) {
+                for (int depth = 0; depth < MAX_DEPTH; ++depth) {
+                    probCut.slopes[stage][depth] = in.readFloat();
+                    probCut.intercepts[stage][depth] = in.readFloat();
+                    probCut.sigmas[stage][depth] = in.readFloat();
+                }
+            }
+            return probCut;
+        }
+    }
+
+    /**
+     * Writes the parameters to a file, in the format load reads.
+     * @param path The file to write, which is replaced if it exists.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(STAGES);
+            out.writeInt(MAX_DEPTH);
+            for (int stage = 0; stage < STAGES; ++stage) {
+                for (int depth = 0; depth < MAX_DEPTH; ++depth) {
+                    out.writeFloat(slopes[stage][depth]);
+                    out.writeFloat(intercepts[stage][depth]);
+                    out.writeFloat(sigmas[stage][depth]);
+                }
+            }
+        }
+    }
+}
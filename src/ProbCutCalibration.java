@@ -0,0 +1,207 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Fits the parameters of ProbCut to positions from self-play, and saves them for Player.setProbCut. <br>
+ * Every position is searched to every depth from 1 to the deepest one calibrated, by the same principal variation
+ * search the player uses (without ProbCut, and with an empty transposition table every time). For every stage and
+ * remaining depth, the values of the deep searches are then regressed on those of the check searches (see
+ * ProbCut.checkDepth) by least squares. Depths deeper than the deepest one calibrated take the parameters of the
+ * deepest calibrated depth of the same parity, as the error of the prediction grows only slowly with the depth. <br>
+ * Usage:
+ * <pre>
+ *  java ProbCutCalibration output [--positions n] [--depth n] [--random n] [--seed n] [--pattern] [--weights file]
+ * </pre>
+ * Options:
+ * <ul>
+ *     <li>--positions: the number of positions to fit to, 200 by default.</li>
+ *     <li>--depth: the deepest remaining depth calibrated, 10 by default.</li>
+ *     <li>--random: the number of random moves every self-play game starts with, so that the games differ, 6 by
+ *     default. The rest of the moves are searched to depth 4.</li>
+ *     <li>--pattern and --weights: fit the parameters for a PatternEvaluator (with the weights of the given file, or the
+ *     default ones) instead of Board.evaluate. Parameters only suit the heuristic function they were fitted with.</li>
+ * </ul>
+ */
+public class ProbCutCalibration {
+    private static final int SELF_PLAY_DEPTH = 4;
+    // the self-play games are only a source of positions, so they are not worth solving from the default threshold
+    private static final int SELF_PLAY_ENDGAME_THRESHOLD = 12;
+    private static final int SAMPLE_ONE_IN = 4;     // every position of a game is kept with this chance
+    private static final int MIN_SAMPLES = 20;      // a stage and depth with fewer positions is left without parameters
+    private static final int TABLE_MEGABYTES = 16;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java ProbCutCalibration output [--positions n] [--depth n] [--random n] "
+                    + "[--seed n] [--pattern] [--weights file]");
+            System.exit(2);
+        }
+        Path output = Path.of(args[0]);
+        int positions = 200;
+        int maxDepth = 10;
+        int randomMoves = 6;
+        long seed = System.nanoTime();
+        boolean pattern = false;
+        Path weights = null;
+        for (int i = 1; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--positions" -> positions = Integer.parseInt(args[++i]);
+                case "--depth" -> maxDepth = Math.min(ProbCut.MAX_DEPTH - 1, Integer.parseInt(args[++i]));
+                case "--random" -> randomMoves = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--pattern" -> pattern = true;
+                case "--weights" -> {
+                    pattern = true;
+                    weights = Path.of(args[++i]);
+                }
+                default -> throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+        }
+        PatternEvaluator evaluator = null;
+        if (pattern) {
+            evaluator = weights != null ? PatternEvaluator.load(weights) : new PatternEvaluator();
+        }
+
+        List<Board> boards = selfPlayPositions(positions, randomMoves, evaluator, new SplittableRandom(seed));
+        int[] stages = new int[boards.size()];
+        int[][] values = new int[boards.size()][];
+        TranspositionTable table = new TranspositionTable(TABLE_MEGABYTES, TranspositionTable.ReplacementPolicy.DEPTH_PREFERRED);
+        long start = System.nanoTime();
+        for (int i = 0; i < boards.size(); ++i) {
+            Board board = boards.get(i);
+            stages[i] = ProbCut.stage(board.getScore(Board.WHITE) + board.getScore(Board.BLACK));
+            values[i] = searchValues(board, maxDepth, evaluator, table);
+            if ((i + 1) % 10 == 0) {
+                System.out.printf("Searched %d of %d positions (%.0f s)%n", i + 1, boards.size(),
+                        (System.nanoTime() - start) / 1e9);
+            }
+        }
+
+        ProbCut probCut = fit(stages, values, maxDepth);
+        probCut.save(output);
+        System.out.println("Wrote the parameters of " + boards.size() + " positions to " + output);
+    }
+
+    /**
+     * Plays games of the engine against itself and keeps some of the positions on the way, in which the player to move
+     * has a move.
+     */
+    private static List<Board> selfPlayPositions(int positions, int randomMoves, PatternEvaluator evaluator,
+                                                 SplittableRandom random) {
+        // the two players take turns, so they can share a table
+        TranspositionTable table = new TranspositionTable();
+        Player white = new Player(SELF_PLAY_DEPTH, Board.WHITE, table);
+        Player black = new Player(SELF_PLAY_DEPTH, Board.BLACK, table);
+        white.setPatternEvaluator(evaluator);
+        black.setPatternEvaluator(evaluator);
+        white.setEndgameThreshold(SELF_PLAY_ENDGAME_THRESHOLD);
+        black.setEndgameThreshold(SELF_PLAY_ENDGAME_THRESHOLD);
+        List<Board> boards = new ArrayList<>();
+        while (boards.size() < positions) {
+            Board board = new Board();
+            for (int ply = 0; !board.isTerminal() && boards.size() < positions; ++ply) {
+                int colour = board.getPlayerToMove();
+                if (ply >= randomMoves && random.nextInt(SAMPLE_ONE_IN) == 0) {
+                    boards.add(new Board(board));
+                }
+                int square;
+                if (ply < randomMoves) {
+                    long moves = board.legalMoves(colour);
+                    for (int skip = random.nextInt(Long.bitCount(moves)); skip > 0; --skip) {
+                        moves &= moves - 1;
+                    }
+                    square = Long.numberOfTrailingZeros(moves);
+                } else {
+                    Move move = (colour == Board.WHITE ? white : black).minimax(board);
+                    square = Bitboards.square(move.getRow(), move.getCol());
+                }
+                board.makeMove(square / 8, square % 8, colour);
+            }
+        }
+        return boards;
+    }
+
+    /**
+     * @return The value of the board for the player to move, searched to every depth from 1 to maxDepth (index 0 is
+     * unused).
+     */
+    private static int[] searchValues(Board board, int maxDepth, PatternEvaluator evaluator, TranspositionTable table) {
+        int colour = board.getPlayerToMove();
+        int[] values = new int[maxDepth + 1];
+        for (int depth = 1; depth <= maxDepth; ++depth) {
+            Player player = new Player(depth, colour, table);
+            player.setPrincipalVariationSearch(true);
+            player.setEndgameThreshold(0);
+            player.setPatternEvaluator(evaluator);
+            table.clear();
+            values[depth] = colour * player.minimax(board).getValue();
+        }
+        return values;
+    }
+
+    /**
+     * Regresses the deep values on the check values for every stage and depth, and prints the parameters.
+     */
+    private static ProbCut fit(int[] stages, int[][] values, int maxDepth) {
+        ProbCut probCut = new ProbCut();
+        System.out.printf("%-6s %6s %6s %8s %10s %10s %10s%n", "stage", "depth", "check", "samples", "slope",
+                "intercept", "sigma");
+        for (int stage = 0; stage < ProbCut.STAGES; ++stage) {
+            for (int depth = ProbCut.MIN_DEPTH; depth <= maxDepth; ++depth) {
+                int checkDepth = ProbCut.checkDepth(depth);
+                int samples = 0;
+                double sumX = 0;
+                double sumY = 0;
+                double sumXX = 0;
+                double sumXY = 0;
+                for (int i = 0; i < values.length; ++i) {
+                    double x = values[i][checkDepth];
+                    double y = values[i][depth];
+                    // a game that is over has an exact value rather than a heuristic one, which would only skew the fit
+                    if (stages[i] != stage || Math.abs(x) >= 10000 || Math.abs(y) >= 10000) {
+                        continue;
+                    }
+                    ++samples;
+                    sumX += x;
+                    sumY += y;
+                    sumXX += x * x;
+                    sumXY += x * y;
+                }
+                double variance = samples * sumXX - sumX * sumX;
+                if (samples < MIN_SAMPLES || variance <= 0) {
+                    continue;
+                }
+                double slope = (samples * sumXY - sumX * sumY) / variance;
+                if (slope <= 0) {
+                    // too noisy to predict anything from, and ProbCut could only cut on the wrong side with it
+                    System.out.printf("%-6d %6d %6d %8d %10.3f  skipped, the slope is not positive%n", stage, depth,
+                            checkDepth, samples, slope);
+                    continue;
+                }
+                double intercept = (sumY - slope * sumX) / samples;
+                double squaredErrors = 0;
+                for (int i = 0; i < values.length; ++i) {
+                    double x = values[i][checkDepth];
+                    double y = values[i][depth];
+                    if (stages[i] == stage && Math.abs(x) < 10000 && Math.abs(y) < 10000) {
+                        double error = y - (slope * x + intercept);
+                        squaredErrors += error * error;
+                    }
+                }
+                double sigma = Math.sqrt(squaredErrors / (samples - 2));
+                probCut.setParameters(stage, depth, slope, intercept, sigma);
+                System.out.printf("%-6d %6d %6d %8d %10.3f %10.1f %10.1f%n", stage, depth, checkDepth, samples, slope,
+                        intercept, sigma);
+
+                // the deeper depths of the same parity take these parameters until they are calibrated themselves
+                for (int deeper = depth + 2; deeper < ProbCut.MAX_DEPTH; deeper += 2) {
+                    probCut.setParameters(stage, deeper, slope, intercept, sigma);
+                }
+            }
+        }
+        return probCut;
+    }
+}
@@ -1,3 +1,6 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Scanner;
@@ -8,6 +11,15 @@ import static java.lang.Thread.sleep;
  * The class containing the program's main method.
  */
 public class Reversi {
+    // the opening book the AI plays from, if there is one in the working directory (see BookBuilder)
+    private static final Path BOOK_FILE = Path.of("reversi.book");
+    /* the ProbCut parameters of the hard difficulty, if there are some in the working directory. They have to be fitted
+     * for the default pattern weights ("java ProbCutCalibration probcut.params --pattern"), which the hard difficulty
+     * then evaluates with, as Board.evaluate is too uneven from one depth to the next to predict deep values from */
+    private static final Path PROBCUT_FILE = Path.of("probcut.params");
+    // how deep the hard difficulty searches when it can prune selectively, in about the time depth 8 takes without
+    private static final int SELECTIVE_HARD_DEPTH = 12;
+
     public static void main(String[] args) {
         try {
             reversiLoop();
@@ -24,7 +36,8 @@ public class Reversi {
         System.out.println("REVERSI");
 
         /* in order to make the menu more user-friendly, we will be providing 3 difficulty options instead of letting
-         * the user pick freely. Available options are easy (depth of 2), normal (depth of 4), and hard (depth of 8). */
+         * the user pick freely. Available options are easy (depth of 2), normal (depth of 4), and hard (depth of 8, or
+         * 12 with ProbCut parameters). */
         String difficulty = " ";
         while (!difficulty.equals("1") && !difficulty.equals("2") && !difficulty.equals("3") &&
                 !difficulty.equals("easy") && !difficulty.equals("normal") && !difficulty.equals("hard")) {
@@ -37,12 +50,25 @@ public class Reversi {
         }
 
         int depth;
+        int endgameThreshold = 0;   // only the hard difficulty plays the end of the game perfectly
+        boolean delay = true;       // easy and normal answer too fast for a move to be followed, so they wait a little
+        ProbCut probCut = null;
         if (difficulty.equals("1") || difficulty.equals("easy")) {
             depth = 2;
         } else if (difficulty.equals("2") || difficulty.equals("normal")) {
             depth = 4;
         } else {
             depth = 8;
+            endgameThreshold = EndgameSolver.DEFAULT_THRESHOLD;
+            delay = false;
+            if (Files.exists(PROBCUT_FILE)) {
+                try {
+                    probCut = ProbCut.load(PROBCUT_FILE);
+                    depth = SELECTIVE_HARD_DEPTH;
+                } catch (IOException e) {
+                    System.err.println("Could not read the ProbCut parameters: " + e.getMessage());
+                }
+            }
         }
 
         String answer = " ";
@@ -65,6 +91,23 @@ public class Reversi {
             humanColour = Board.WHITE;
             npcPlays = true;
         }
+        npc.setEndgameThreshold(endgameThreshold);
+        if (probCut != null) {
+            npc.setPrincipalVariationSearch(true);
+            npc.setPatternEvaluator(new PatternEvaluator());
+            npc.setProbCut(probCut);
+        }
+        if (Files.exists(BOOK_FILE)) {
+            try {
+                npc.setOpeningBook(OpeningBook.open(BOOK_FILE));
+            } catch (IOException e) {
+                System.err.println("Could not read the opening book: " + e.getMessage());
+            }
+        }
+
+        // the AI thinks on the human's time, about the reply it expects
+        Ponderer ponderer = new Ponderer(npc);
+
         Board board = new Board();
         board.print();
 
@@ -159,19 +202,22 @@ public class Reversi {
                 }
                 System.out.println(availableMoves.get(availableMoves.size()-1).formattedIndex() + ".");
 
-                Move npcMove = npc.minimax(board);
+                Move npcMove = ponderer.respond(board);
 
                 // introducing a slight delay in cases that are not expensive by nature
-                if (depth != 8 && children.size() < 5) {
+                if (delay && children.size() < 5) {
                     sleep(1250);
                 }
                 System.out.println("AI move: " + npcMove.formattedIndex());
                 board.makeMove(npcMove.getRow(), npcMove.getCol(), npcColour);
                 board.print();
+                ponderer.start(board);
                 npcPlays = false;
             }
         }
 
+        ponderer.cancel();
+
         int winner = board.getWinner();
         if (winner != Board.BLACK && winner != Board.WHITE && winner != Board.EMPTY) {
             // if calling getWinner fetched the error value instead of the acceptable values
@@ -0,0 +1,54 @@
+/**
+ * Prints how many nodes the search visits on the positions of Positions, at each of the depths of the difficulty menu
+ * (or the depths given as arguments), with and without move ordering. Every search starts from an empty transposition
+ * table, so the counts do not depend on the order the positions are searched in.
+ */
+public class SearchReport {
+    public static void main(String[] args) {
+        int[] depths = {2, 4, 8};
+        if (args.length > 0) {
+            depths = new int[args.length];
+            for (int i = 0; i < args.length; ++i) {
+                depths[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        Board[] boards = concat(Positions.boards(Positions.OPENING), Positions.boards(Positions.MIDGAME));
+        System.out.printf("%-6s %18s %12s %18s %12s %10s%n", "depth", "nodes (unordered)", "time (ms)",
+                "nodes (ordered)", "time (ms)", "saved");
+        for (int depth : depths) {
+            long[] unordered = run(boards, depth, false);
+            long[] ordered = run(boards, depth, true);
+            double saved = 100.0 * (unordered[0] - ordered[0]) / unordered[0];
+            System.out.printf("%-6d %18d %12d %18d %12d %9.1f%%%n", depth, unordered[0], unordered[1] / 1_000_000,
+                    ordered[0], ordered[1] / 1_000_000, saved);
+        }
+    }
+
+    /**
+     * Searches every board to the given depth.
+     * @return The total number of nodes visited and the total time taken in nanoseconds.
+     */
+    private static long[] run(Board[] boards, int depth, boolean moveOrdering) {
+        long nodes = 0;
+        long time = 0;
+        TranspositionTable table = new TranspositionTable();
+        for (Board board : boards) {
+            Player player = new Player(depth, board.getPlayerToMove(), table);
+            player.setMoveOrdering(moveOrdering);
+            table.clear();
+            long start = System.nanoTime();
+            player.minimax(board);
+            time += System.nanoTime() - start;
+            nodes += player.getNodeCount();
+        }
+        return new long[] {nodes, time};
+    }
+
+    private static Board[] concat(Board[] first, Board[] second) {
+        Board[] boards = new Board[first.length + second.length];
+        System.arraycopy(first, 0, boards, 0, first.length);
+        System.arraycopy(second, 0, boards, first.length, second.length);
+        return boards;
+    }
+}
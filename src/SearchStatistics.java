@@ -0,0 +1,320 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Collects what the searches of the players it is given to (see Player.setStatistics) are doing: nodes per depth,
+ * cutoffs and how often the first move produced them, transposition table hits, ProbCut cuts, the depth reached and
+ * the time taken. <br>
+ * The search never touches anything shared while it runs. Every player, and every helper thread of a player, counts
+ * into its own Stripe of plain longs, which costs an increment per event. Once a move has been chosen, its stripe
+ * (with those of the helpers added in) is summarised and added to totals kept in LongAdders. Any number of players on
+ * any number of threads can therefore share one instance, and the totals can be read at any time, for instance by a
+ * thread that reports them. For every move, a summary is also written as one line of JSON to the log, if there is one,
+ * and committed as a JFR event (reversi.Search) while a flight recording is running. A player without statistics
+ * counts nothing.
+ */
+public class SearchStatistics
+{
+    // one more than the deepest ply a search can reach (see Player)
+    static final int MAX_PLY = 64;
+
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder cutoffs = new LongAdder();
+    private final LongAdder firstMoveCutoffs = new LongAdder();
+    private final LongAdder transpositionHits = new LongAdder();
+    private final LongAdder probCuts = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder[] nodesPerDepth = new LongAdder[MAX_PLY];
+
+    // where the summary of every move is written as a line of JSON, null to write none
+    private final Writer log;
+    private final String label;     // added to every line, to tell apart the players sharing a log (null to add none)
+
+    /**
+     * Creates statistics that only keep the totals (and commit JFR events).
+     */
+    public SearchStatistics()
+    {
+        this(null, null);
+    }
+
+    /**
+     * @param log Where the summary of every move is written, as one line of JSON. It is flushed after every line, and
+     * can be shared with other instances.
+     * @param label Written into every line as "player", or null to leave it out.
+     */
+    public SearchStatistics(Writer log, String label)
+    {
+        this.log = log;
+        this.label = label;
+        for (int depth = 0; depth < MAX_PLY; ++depth) {
+            nodesPerDepth[depth] = new LongAdder();
+        }
+    }
+
+    /**
+     * The counters of a single thread of a single player. Only that thread writes to it while it searches.
+     */
+    static final class Stripe
+    {
+        final long[] nodes = new long[MAX_PLY];
+        final long[] cutoffs = new long[MAX_PLY];
+        long firstMoveCutoffs;
+        long transpositionHits;
+        long probCuts;
+
+        /**
+         * Records a cutoff.
+         * @param depth The depth of the node.
+         * @param index The index of the move that caused it, in the order the moves were searched in.
+         */
+        void cutoff(int depth, int index) {
+            ++cutoffs[depth];
+            if (index == 0) {
+                ++firstMoveCutoffs;
+            }
+        }
+
+        /**
+         * Adds the counters of another stripe (of a helper thread) to these, and clears them.
+         */
+        void add(Stripe other) {
+            for (int depth = 0; depth < MAX_PLY; ++depth) {
+                nodes[depth] += other.nodes[depth];
+                cutoffs[depth] += other.cutoffs[depth];
+            }
+            firstMoveCutoffs += other.firstMoveCutoffs;
+            transpositionHits += other.transpositionHits;
+            probCuts += other.probCuts;
+            other.clear();
+        }
+
+        void clear() {
+            Arrays.fill(nodes, 0);
+            Arrays.fill(cutoffs, 0);
+            firstMoveCutoffs = 0;
+            transpositionHits = 0;
+            probCuts = 0;
+        }
+    }
+
+    @Name("reversi.Search")
+    @Label("Search")
+    @Category("Reversi")
+    @Description("The search of one move")
+    static final class SearchEvent extends Event
+    {
+        @Label("Ply")
+        int ply;
+        @Label("Colour")
+        String colour;
+        @Label("Move")
+        String move;
+        @Label("Value")
+        int value;
+        @Label("Source")
+        String source;
+        @Label("Depth")
+        int depth;
+        @Label("Nodes")
+        long nodes;
+        @Label("Cutoffs")
+        long cutoffs;
+        @Label("Search Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+    }
+
+    /**
+     * Summarises the search of a move, adds it to the totals and clears the stripe.
+     * @param board The board the move was chosen for.
+     * @param colour The colour of the player who chose it.
+     * @param move The move chosen, null if there was none.
+     * @param source How the move was chosen: "book", "solver" or "search".
+     * @param depth The depth of the last search that finished (the number of empty squares if the move was solved).
+     * @param nodeCount The number of nodes visited, by every thread and the endgame solver included.
+     * @param nanos The time taken.
+     * @param stripe The counters of the search, with those of its helper threads added in.
+     */
+    void recordMove(Board board, int colour, Move move, String source, int depth, long nodeCount, long nanos,
+                    Stripe stripe) {
+        long cutoffCount = 0;
+        for (int i = 0; i < MAX_PLY; ++i) {
+            if (stripe.nodes[i] != 0) {
+                nodesPerDepth[i].add(stripe.nodes[i]);
+            }
+            cutoffCount += stripe.cutoffs[i];
+        }
+        moves.increment();
+        nodes.add(nodeCount);
+        cutoffs.add(cutoffCount);
+        firstMoveCutoffs.add(stripe.firstMoveCutoffs);
+        transpositionHits.add(stripe.transpositionHits);
+        probCuts.add(stripe.probCuts);
+        this.nanos.add(nanos);
+
+        int ply = board.getScore(Board.WHITE) + board.getScore(Board.BLACK) - 4;
+        String square = move != null && move.getRow() >= 0 ? move.formattedIndex() : "--";
+        int value = move != null ? move.getValue() : 0;
+
+        SearchEvent event = new SearchEvent();
+        if (event.shouldCommit()) {
+            event.ply = ply;
+            event.colour = colour == Board.WHITE ? "white" : "black";
+            event.move = square;
+            event.value = value;
+            event.source = source;
+            event.depth = depth;
+            event.nodes = nodeCount;
+            event.cutoffs = cutoffCount;
+            event.nanos = nanos;
+            event.commit();
+        }
+
+        if (log != null) {
+            StringBuilder line = new StringBuilder(256);
+            line.append('{');
+            if (label != null) {
+                line.append("\"player\":\"").append(label).append("\",");
+            }
+            line.append("\"ply\":").append(ply)
+                    .append(",\"colour\":\"").append(colour == Board.WHITE ? "white" : "black")
+                    .append("\",\"move\":\"").append(square)
+                    .append("\",\"value\":").append(value)
+                    .append(",\"source\":\"").append(source)
+                    .append("\",\"depth\":").append(depth)
+                    .append(",\"nodes\":").append(nodeCount)
+                    .append(",\"timeMs\":").append(String.format(Locale.ROOT, "%.3f", nanos / 1e6))
+                    .append(",\"nodesPerSecond\":").append(nanos > 0 ? Math.round(nodeCount * 1e9 / nanos) : 0)
+                    .append(",\"branchingFactor\":")
+                    .append(String.format(Locale.ROOT, "%.3f", branchingFactor(nodeCount, depth)))
+                    .append(",\"cutoffs\":").append(cutoffCount)
+                    .append(",\"firstMoveCutoffRate\":")
+                    .append(String.format(Locale.ROOT, "%.4f", cutoffCount > 0 ? (double) stripe.firstMoveCutoffs / cutoffCount : 0))
+                    .append(",\"transpositionHits\":").append(stripe.transpositionHits)
+                    .append(",\"probCuts\":").append(stripe.probCuts);
+            appendArray(line.append(",\"nodesPerDepth\":"), stripe.nodes);
+            appendArray(line.append(",\"cutoffsPerDepth\":"), stripe.cutoffs);
+            line.append("}\n");
+            // players on different threads may share the log, and every line has to stay whole
+            synchronized (log) {
+                try {
+                    log.write(line.toString());
+                    log.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        stripe.clear();
+    }
+
+    /**
+     * @return The branching factor that would make a uniform tree of the given depth have the given number of nodes.
+     */
+    private static double branchingFactor(long nodeCount, int depth) {
+        return depth > 0 && nodeCount > 1 ? Math.pow(nodeCount, 1.0 / depth) : 0;
+    }
+
+    /**
+     * Appends the counts up to the deepest one that is not 0, as a JSON array.
+     */
+    private static void appendArray(StringBuilder line, long[] counts) {
+        int length = counts.length;
+        while (length > 0 && counts[length - 1] == 0) {
+            --length;
+        }
+        line.append('[');
+        for (int i = 0; i < length; ++i) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append(counts[i]);
+        }
+        line.append(']');
+    }
+
+    /**
+     * @return The number of moves recorded so far.
+     */
+    public long getMoves()
+    {
+        return moves.sum();
+    }
+
+    /**
+     * @return The number of nodes visited by all the moves recorded so far.
+     */
+    public long getNodes()
+    {
+        return nodes.sum();
+    }
+
+    /**
+     * @return The number of cutoffs of all the moves recorded so far.
+     */
+    public long getCutoffs()
+    {
+        return cutoffs.sum();
+    }
+
+    /**
+     * @return The share of the cutoffs that the first move searched produced, a measure of how good the move ordering
+     * is.
+     */
+    public double getFirstMoveCutoffRate()
+    {
+        long cutoffCount = cutoffs.sum();
+        return cutoffCount > 0 ? (double) firstMoveCutoffs.sum() / cutoffCount : 0;
+    }
+
+    /**
+     * @return The number of nodes whose value was found in the transposition table.
+     */
+    public long getTranspositionHits()
+    {
+        return transpositionHits.sum();
+    }
+
+    /**
+     * @return The number of nodes cut by ProbCut.
+     */
+    public long getProbCuts()
+    {
+        return probCuts.sum();
+    }
+
+    /**
+     * @param depth A depth of the search, 0 being the root.
+     * @return The number of nodes visited at that depth by all the moves recorded so far.
+     */
+    public long getNodes(int depth)
+    {
+        return nodesPerDepth[depth].sum();
+    }
+
+    /**
+     * @return The totals so far, on one line.
+     */
+    @Override
+    public String toString() {
+        long moveCount = moves.sum();
+        long nanoCount = nanos.sum();
+        return String.format(Locale.ROOT, "%d moves, %d nodes (%.0f per move), %.0f nodes/s, %d cutoffs (%.1f%% by the first move), "
+                        + "%d table hits, %d ProbCut cuts", moveCount, nodes.sum(),
+                (double) nodes.sum() / Math.max(moveCount, 1), nanoCount > 0 ? nodes.sum() * 1e9 / nanoCount : 0,
+                cutoffs.sum(), 100 * getFirstMoveCutoffRate(), transpositionHits.sum(), probCuts.sum());
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * The 8 symmetries of the board (the rotations and reflections), applied to bitboards (see Bitboards). Positions that
+ * are symmetries of each other are worth the same, with the same moves turned the same way, so anything that stores
+ * positions (an opening book, a cache of results) can store one of them for all 8: the canonical orientation, found by
+ * canonical. <br>
+ * A symmetry is a number from 0 to 7. Bit 2 transposes the board (swaps rows and columns), bit 1 mirrors it left to
+ * right and bit 0 flips it top to bottom, applied in that order. 0 is the identity. Every step is a handful of
+ * delta swaps (or a byte swap for the flip), so turning a bitboard costs a few nanoseconds at most.
+ */
+public final class Symmetry
+{
+    /** The number of symmetries. */
+    public static final int COUNT = 8;
+
+    // where every symmetry sends every square, and where its inverse does
+    private static final int[][] SQUARES = new int[COUNT][64];
+    private static final int[][] INVERSE_SQUARES = new int[COUNT][64];
+
+    static {
+        for (int symmetry = 0; symmetry < COUNT; ++symmetry) {
+            for (int square = 0; square < 64; ++square) {
+                SQUARES[symmetry][square] = Long.numberOfTrailingZeros(transform(1L << square, symmetry));
+                INVERSE_SQUARES[symmetry][square] = Long.numberOfTrailingZeros(inverse(1L << square, symmetry));
+            }
+        }
+    }
+
+    private Symmetry() {
+    }
+
+    /**
+     * Finds the canonical orientation of a position: of its 8 symmetries, the one with the smallest disks of the
+     * player to move (compared as unsigned numbers), and of those the one with the smallest disks of the opponent.
+     * @param player The disks of the player to move.
+     * @param opponent The disks of their opponent.
+     * @return The symmetry that turns the position into its canonical orientation. Store the position as
+     * transform(player, symmetry) and transform(opponent, symmetry), and a move of it as transformSquare(square,
+     * symmetry). A move read back from the canonical orientation is turned back with inverseSquare.
+     */
+    public static int canonical(long player, long opponent) {
+        int best = 0;
+        long bestPlayer = player;
+        long bestOpponent = opponent;
+        // each step is taken once and shared by the orientations that include it, in the order transform applies them
+        for (int transposed = 0; transposed < 2; ++transposed) {
+            long transposedPlayer = transposed == 0 ? player : transpose(player);
+            long transposedOpponent = transposed == 0 ? opponent : transpose(opponent);
+            for (int mirrored = 0; mirrored < 2; ++mirrored) {
+                long mirroredPlayer = mirrored == 0 ? transposedPlayer : mirror(transposedPlayer);
+                long mirroredOpponent = mirrored == 0 ? transposedOpponent : mirror(transposedOpponent);
+                for (int flipped = 0; flipped < 2; ++flipped) {
+                    long turnedPlayer = flipped == 0 ? mirroredPlayer : Long.reverseBytes(mirroredPlayer);
+                    long turnedOpponent = flipped == 0 ? mirroredOpponent : Long.reverseBytes(mirroredOpponent);
+                    int order = Long.compareUnsigned(turnedPlayer, bestPlayer);
+                    if (order < 0 || (order == 0 && Long.compareUnsigned(turnedOpponent, bestOpponent) < 0)) {
+                        best = transposed * 4 + mirrored * 2 + flipped;
+                        bestPlayer = turnedPlayer;
+                        bestOpponent = turnedOpponent;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param board A board.
+     * @param playerColour The colour of the player to move.
+     * @return The symmetry that turns the position into its canonical orientation (see canonical(long, long)).
+     */
+    public static int canonical(Board board, int playerColour) {
+        return canonical(board.getDisks(playerColour), board.getDisks(-playerColour));
+    }
+
+    /**
+     * Applies one of the symmetries to a set of squares.
+     * @param squares The squares, one bit per square.
+     * @param symmetry The symmetry, from 0 to 7.
+     * @return The squares the symmetry sends them to.
+     */
+    public static long transform(long squares, int symmetry) {
+        if ((symmetry & 4) != 0) {
+            squares = transpose(squares);
+        }
+        if ((symmetry & 2) != 0) {
+            squares = mirror(squares);
+        }
+        if ((symmetry & 1) != 0) {
+            squares = Long.reverseBytes(squares);
+        }
+        return squares;
+    }
+
+    /**
+     * Undoes transform, applying the same steps in the opposite order.
+     */
+    public static long inverse(long squares, int symmetry) {
+        if ((symmetry & 1) != 0) {
+            squares = Long.reverseBytes(squares);
+        }
+        if ((symmetry & 2) != 0) {
+            squares = mirror(squares);
+        }
+        if ((symmetry & 4) != 0) {
+            squares = transpose(squares);
+        }
+        return squares;
+    }
+
+    /**
+     * @return The square the symmetry sends the given square to (see Bitboards for the square numbering).
+     */
+    public static int transformSquare(int square, int symmetry) {
+        return SQUARES[symmetry][square];
+    }
+
+    /**
+     * @return The square the inverse of the symmetry sends the given square to, which turns a move of the canonical
+     * orientation back into a move of the position.
+     */
+    public static int inverseSquare(int square, int symmetry) {
+        return INVERSE_SQUARES[symmetry][square];
+    }
+
+    /**
+     * @return The squares mirrored left to right (column A becomes column H).
+     */
+    public static long mirror(long squares) {
+        squares = ((squares >>> 1) & 0x5555555555555555L) | ((squares & 0x5555555555555555L) << 1);
+        squares = ((squares >>> 2) & 0x3333333333333333L) | ((squares & 0x3333333333333333L) << 2);
+        return ((squares >>> 4) & 0x0f0f0f0f0f0f0f0fL) | ((squares & 0x0f0f0f0f0f0f0f0fL) << 4);
+    }
+
+    /**
+     * @return The squares reflected in the A1-H8 diagonal (the square at (row, col) moves to (col, row)).
+     */
+    public static long transpose(long squares) {
+        long swap = 0x0f0f0f0f00000000L & (squares ^ (squares << 28));
+        squares ^= swap ^ (swap >>> 28);
+        swap = 0x3333000033330000L & (squares ^ (squares << 14));
+        squares ^= swap ^ (swap >>> 14);
+        swap = 0x5500550055005500L & (squares ^ (squares << 7));
+        return squares ^ swap ^ (swap >>> 7);
+    }
+}
@@ -0,0 +1,291 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Plays a match between two Player configurations without any input, output or delays, one game per task across
+ * every core, and reports how they did against each other. <br>
+ * Games are played in pairs from the same opening, once with each configuration playing black, so that an unbalanced
+ * opening favours neither side. The openings are either a number of random moves from the start position, or the
+ * positions of Positions.OPENING in turn. <br>
+ * Usage:
+ * <pre>
+ *  java Tournament [games] [player A] [player B] [--random moves] [--positions] [--threads n] [--seed n]
+ *                  [--pattern-a] [--pattern-b] [--weights file] [--pvs-a] [--pvs-b]
+ *                  [--probcut-a file] [--probcut-b file] [--metrics file]
+ * </pre>
+ * A player is written as its maximum depth, optionally followed by a time budget per move in milliseconds and by the
+ * number of empty squares it starts solving the game from (for example "8", "10/100" or "6/0/14"). The defaults are
+ * 100 games of "4" against "2", each opening made of 8 random moves. With --pattern-a or --pattern-b, that player
+ * evaluates with a PatternEvaluator, using the weights of the given file or the default ones. With --pvs-a or --pvs-b,
+ * that player searches with the principal variation search (see Player.setPrincipalVariationSearch). With --probcut-a
+ * or --probcut-b, that player also prunes with the ProbCut parameters of the given file (see ProbCutCalibration).
+ * With --metrics, a summary of every move is written to the given file as a line of JSON (see SearchStatistics), and
+ * the totals of both players are printed at the end.
+ */
+public class Tournament
+{
+    // every player gets a table of this size, as a tournament keeps many players in memory at once
+    private static final int TABLE_MEGABYTES = 4;
+
+    private static final double CONFIDENCE_Z = 1.96;    // the z-score of a 95% confidence interval
+
+    /**
+     * A player's configuration, from which a new Player is created for every game.
+     */
+    private static final class Configuration
+    {
+        private final int depth;
+        private final long timeBudget;
+        private final int endgameThreshold;
+        private PatternEvaluator evaluator;     // null to use Board.evaluate
+        private boolean principalVariationSearch;
+        private ProbCut probCut;    // null to search every move to the full depth
+        private SearchStatistics statistics;    // null to record nothing
+
+        private Configuration(String description)
+        {
+            String[] parts = description.split("/");
+            this.depth = Integer.parseInt(parts[0]);
+            this.timeBudget = parts.length > 1 ? Long.parseLong(parts[1]) : 0;
+            this.endgameThreshold = parts.length > 2 ? Integer.parseInt(parts[2]) : EndgameSolver.DEFAULT_THRESHOLD;
+        }
+
+        private Player create(int colour) {
+            Player player = new Player(depth, colour,
+                    new TranspositionTable(TABLE_MEGABYTES, TranspositionTable.ReplacementPolicy.DEPTH_PREFERRED));
+            player.setTimeBudget(timeBudget);
+            player.setEndgameThreshold(endgameThreshold);
+            player.setEndgameTableSize(TABLE_MEGABYTES);
+            player.setPatternEvaluator(evaluator);
+            player.setPrincipalVariationSearch(principalVariationSearch || probCut != null);
+            player.setProbCut(probCut);
+            player.setStatistics(statistics);
+            return player;
+        }
+
+        @Override
+        public String toString() {
+            return "depth " + depth + (timeBudget > 0 ? ", " + timeBudget + " ms per move" : "")
+                    + ", solving from " + endgameThreshold + " empty squares"
+                    + (evaluator != null ? ", pattern evaluation" : "")
+                    + (principalVariationSearch || probCut != null ? ", principal variation search" : "")
+                    + (probCut != null ? ", ProbCut" : "");
+        }
+    }
+
+    /**
+     * The outcome of one game, seen from player A.
+     */
+    private static final class Result
+    {
+        private int margin;     // A's disks minus B's
+        private final long[] nodes = new long[2];   // A's first, then B's
+        private final long[] nanos = new long[2];
+        private final int[] moves = new int[2];
+    }
+
+    public static void main(String[] args) throws IOException {
+        int games = 100;
+        String[] players = {"4", "2"};
+        int playersGiven = 0;
+        int randomMoves = 8;
+        boolean positions = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        boolean[] patterns = new boolean[2];
+        boolean[] principalVariationSearches = new boolean[2];
+        Path[] probCuts = new Path[2];
+        Path metrics = null;
+        Path weights = null;
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "--random" -> randomMoves = Integer.parseInt(args[++i]);
+                case "--positions" -> positions = true;
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--pattern-a" -> patterns[0] = true;
+                case "--pattern-b" -> patterns[1] = true;
+                case "--weights" -> weights = Path.of(args[++i]);
+                case "--pvs-a" -> principalVariationSearches[0] = true;
+                case "--pvs-b" -> principalVariationSearches[1] = true;
+                case "--probcut-a" -> probCuts[0] = Path.of(args[++i]);
+                case "--probcut-b" -> probCuts[1] = Path.of(args[++i]);
+                case "--metrics" -> metrics = Path.of(args[++i]);
+                default -> {
+                    if (i == 0) {
+                        games = Integer.parseInt(args[i]);
+                    } else if (playersGiven < 2) {
+                        players[playersGiven++] = args[i];
+                    } else {
+                        throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+                    }
+                }
+            }
+        }
+
+        Configuration a = new Configuration(players[0]);
+        Configuration b = new Configuration(players[1]);
+        if (patterns[0] || patterns[1]) {
+            PatternEvaluator evaluator = weights != null ? PatternEvaluator.load(weights) : new PatternEvaluator();
+            a.evaluator = patterns[0] ? evaluator : null;
+            b.evaluator = patterns[1] ? evaluator : null;
+        }
+        a.principalVariationSearch = principalVariationSearches[0];
+        b.principalVariationSearch = principalVariationSearches[1];
+        a.probCut = probCuts[0] != null ? ProbCut.load(probCuts[0]) : null;
+        b.probCut = probCuts[1] != null ? ProbCut.load(probCuts[1]) : null;
+        Writer log = metrics != null ? Files.newBufferedWriter(metrics) : null;
+        if (log != null) {
+            a.statistics = new SearchStatistics(log, "A");
+            b.statistics = new SearchStatistics(log, "B");
+        }
+        System.out.println("A: " + a);
+        System.out.println("B: " + b);
+
+        // the openings, one for every pair of games
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Board> openings = new ArrayList<>();
+        for (int i = 0; i < (games + 1) / 2; ++i) {
+            if (positions) {
+                openings.add(Board.fromMoveList(Positions.OPENING[i % Positions.OPENING.length]));
+            } else {
+                openings.add(randomOpening(randomMoves, random.split()));
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        List<ForkJoinTask<Result>> tasks = new ArrayList<>();
+        for (int game = 0; game < games; ++game) {
+            Board opening = openings.get(game / 2);
+            // A plays black in the first game of every pair, and white in the second
+            int colourOfA = game % 2 == 0 ? Board.BLACK : Board.WHITE;
+            tasks.add(pool.submit(() -> play(new Board(opening), a, b, colourOfA)));
+        }
+
+        int wins = 0;
+        int draws = 0;
+        int losses = 0;
+        long[] nodes = new long[2];
+        long[] nanos = new long[2];
+        long[] moves = new long[2];
+        for (ForkJoinTask<Result> task : tasks) {
+            Result result = task.join();
+            if (result.margin > 0) {
+                ++wins;
+            } else if (result.margin == 0) {
+                ++draws;
+            } else {
+                ++losses;
+            }
+            for (int i = 0; i < 2; ++i) {
+                nodes[i] += result.nodes[i];
+                nanos[i] += result.nanos[i];
+                moves[i] += result.moves[i];
+            }
+        }
+        long time = System.nanoTime() - start;
+        pool.shutdown();
+
+        System.out.printf("games %d: A wins %d, draws %d, B wins %d%n", games, wins, draws, losses);
+        printElo(wins, draws, losses);
+        for (int i = 0; i < 2; ++i) {
+            System.out.printf("%s: %.0f nodes and %.2f ms per move%n", i == 0 ? "A" : "B",
+                    (double) nodes[i] / Math.max(moves[i], 1), nanos[i] / 1e6 / Math.max(moves[i], 1));
+        }
+        System.out.printf("%.2f games/s over %d threads%n", games * 1e9 / time, threads);
+        if (log != null) {
+            log.close();
+            System.out.println("A: " + a.statistics);
+            System.out.println("B: " + b.statistics);
+        }
+    }
+
+    /**
+     * Plays the given number of random moves from the start position, starting over if the game ends before that.
+     */
+    private static Board randomOpening(int moves, SplittableRandom random) {
+        while (true) {
+            Board board = new Board();
+            int played = 0;
+            while (played < moves && !board.isTerminal()) {
+                int colour = board.getPlayerToMove();
+                long legal = board.legalMoves(colour);
+                if (legal == 0) {
+                    board.setLastPlayer(colour);
+                    continue;
+                }
+                // pick one of the set bits at random
+                for (int skip = random.nextInt(Long.bitCount(legal)); skip > 0; --skip) {
+                    legal &= legal - 1;
+                }
+                int square = Long.numberOfTrailingZeros(legal);
+                board.makeMove(square / 8, square % 8, colour);
+                ++played;
+            }
+            if (!board.isTerminal()) {
+                return board;
+            }
+        }
+    }
+
+    /**
+     * Plays a game to the end the way Reversi.reversiLoop does, passing whenever the player to move cannot play.
+     * @param colourOfA The colour player A plays with.
+     * @return The outcome of the game from A's point of view.
+     */
+    private static Result play(Board board, Configuration a, Configuration b, int colourOfA) {
+        Player[] players = {a.create(colourOfA), b.create(-colourOfA)};
+        Result result = new Result();
+        while (!board.isTerminal()) {
+            int colour = board.getPlayerToMove();
+            if (!board.canPlay(colour)) {
+                board.setLastPlayer(colour);
+                continue;
+            }
+            int index = colour == colourOfA ? 0 : 1;
+            long start = System.nanoTime();
+            Move move = players[index].minimax(board);
+            result.nanos[index] += System.nanoTime() - start;
+            result.nodes[index] += players[index].getNodeCount();
+            ++result.moves[index];
+            board.makeMove(move.getRow(), move.getCol(), colour);
+        }
+        result.margin = board.getScore(colourOfA) - board.getScore(-colourOfA);
+        return result;
+    }
+
+    /**
+     * Prints the Elo difference between A and B that their results suggest, with its 95% confidence interval.
+     */
+    private static void printElo(int wins, int draws, int losses) {
+        int games = wins + draws + losses;
+        double score = (wins + 0.5 * draws) / games;
+        double variance = (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2)
+                + losses * Math.pow(score, 2)) / games;
+        double margin = CONFIDENCE_Z * Math.sqrt(variance / games);
+        System.out.printf("score %.1f%%, Elo difference %s (95%% interval %s to %s)%n", 100 * score, elo(score),
+                elo(score - margin), elo(score + margin));
+    }
+
+    /**
+     * @param score The share of the points won, from 0 to 1.
+     * @return The Elo difference matching the score, or an infinite one if the score is 0 or 1 (or beyond).
+     */
+    private static String elo(double score) {
+        if (score <= 0) {
+            return "-inf";
+        }
+        if (score >= 1) {
+            return "+inf";
+        }
+        return String.format("%+d", Math.round(-400 * Math.log10(1 / score - 1)));
+    }
+}
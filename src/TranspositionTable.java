@@ -0,0 +1,213 @@
+import java.util.Arrays;
+
+/**
+ * A fixed-size cache of search results, keyed by the Zobrist key of a position (see Board.getZobristKey). <br>
+ * Entries are kept in two primitive arrays so that probing and storing allocate nothing. Every entry packs the value
+ * found, the remaining depth it was searched to, the kind of bound the value is and the best move into a single long:
+ * <pre>
+ *  bits  0-31  value
+ *  bits 32-39  remaining depth
+ *  bits 40-41  bound type
+ *  bits 42-48  best move square + 1 (0 if there is none)
+ *  bits 49-56  generation (the search the entry was stored in)
+ *  bit  63     set on every stored entry, so that a packed entry is never 0
+ * </pre>
+ * The key of every slot is stored xor'ed with its data, so a slot whose two halves were written by different threads
+ * simply fails to match instead of returning a corrupted entry.
+ */
+public class TranspositionTable
+{
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;    // the real value is at least the one stored (the search failed high)
+    public static final int UPPER_BOUND = 2;    // the real value is at most the one stored (the search failed low)
+
+    public static final int DEFAULT_MEGABYTES = 16;
+
+    /**
+     * Decides which entry is overwritten when a new result is stored in a bucket that is already full.
+     */
+    public enum ReplacementPolicy
+    {
+        /** The newest result always replaces the first slot of its bucket. */
+        ALWAYS,
+        /** Results from older searches are replaced first, then the ones searched to the smallest depth. */
+        DEPTH_PREFERRED
+    }
+
+    private static final int BUCKET_SIZE = 2;
+    private static final int BYTES_PER_ENTRY = 16;
+    private static final long VALID = 1L << 63;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int bucketMask;
+    private final ReplacementPolicy policy;
+    private int generation;
+
+    public TranspositionTable()
+    {
+        this(DEFAULT_MEGABYTES, ReplacementPolicy.DEPTH_PREFERRED);
+    }
+
+    /**
+     * @param megabytes The memory budget of the table. The number of entries is rounded down to a power of 2 that fits it.
+     * @param policy The replacement policy used once the table fills up.
+     */
+    public TranspositionTable(int megabytes, ReplacementPolicy policy)
+    {
+        if (megabytes <= 0) {
+            throw new IllegalArgumentException("The memory budget must be positive.");
+        }
+        long budget = (long) megabytes * 1024 * 1024 / BYTES_PER_ENTRY;
+        int entries = (int) Long.highestOneBit(Math.min(budget, 1 << 30));
+        entries = Math.max(entries, BUCKET_SIZE);
+        this.keys = new long[entries];
+        this.data = new long[entries];
+        this.bucketMask = entries / BUCKET_SIZE - 1;
+        this.policy = policy;
+    }
+
+    /**
+     * For a table that keeps its entries somewhere else (see PersistentTranspositionTable), and so overrides every
+     * method that touches them.
+     * @param policy The replacement policy of the table.
+     */
+    TranspositionTable(ReplacementPolicy policy)
+    {
+        this.keys = null;
+        this.data = null;
+        this.bucketMask = 0;
+        this.policy = policy;
+    }
+
+    /**
+     * Called at the start of every search, so that entries left over from previous searches are replaced first.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xff;
+    }
+
+    /**
+     * Empties the table.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+        generation = 0;
+    }
+
+    /**
+     * @param key The Zobrist key of the position.
+     * @return The packed entry stored for the position, or 0 if there is none. Use the static accessors to unpack it.
+     */
+    public long probe(long key) {
+        int slot = (int) (key & bucketMask) * BUCKET_SIZE;
+        for (int i = slot; i < slot + BUCKET_SIZE; ++i) {
+            long entry = data[i];
+            if (entry != 0 && (keys[i] ^ entry) == key) {
+                return entry;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stores the result of searching a position.
+     * @param key The Zobrist key of the position.
+     * @param depth The remaining depth the position was searched to.
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND.
+     * @param value The value the search returned.
+     * @param move The square of the best move found (see Bitboards for the square numbering), -1 if there is none.
+     */
+    public void store(long key, int depth, int bound, int value, int move) {
+        int slot = (int) (key & bucketMask) * BUCKET_SIZE;
+        int target = -1;
+
+        // a slot that already holds the same position is always reused, unless it holds a deeper result of this search
+        for (int i = slot; i < slot + BUCKET_SIZE; ++i) {
+            long entry = data[i];
+            if (entry != 0 && (keys[i] ^ entry) == key) {
+                if (policy == ReplacementPolicy.DEPTH_PREFERRED && generation(entry) == generation
+                        && depth(entry) > depth && bound != EXACT) {
+                    return;
+                }
+                target = i;
+                break;
+            }
+        }
+
+        if (target < 0) {
+            if (policy == ReplacementPolicy.ALWAYS) {
+                target = slot;
+            } else {
+                target = slot;
+                int worst = replacementScore(data[slot]);
+                for (int i = slot + 1; i < slot + BUCKET_SIZE; ++i) {
+                    int score = replacementScore(data[i]);
+                    if (score < worst) {
+                        worst = score;
+                        target = i;
+                    }
+                }
+            }
+        }
+
+        long entry = pack(generation, depth, bound, value, move);
+        data[target] = entry;
+        keys[target] = key ^ entry;
+    }
+
+    /**
+     * @return How worth keeping an entry is, the entry with the lowest score in a bucket is the one replaced.
+     */
+    private int replacementScore(long entry) {
+        if (entry == 0) {
+            return Integer.MIN_VALUE;
+        }
+        // entries of older searches are always worth less than the ones of the current search
+        int stale = generation(entry) == generation ? 0 : 256;
+        return depth(entry) - stale;
+    }
+
+    /**
+     * @return The number of entries the table can hold.
+     */
+    public int capacity() {
+        return data.length;
+    }
+
+    /**
+     * @return The entry of a result, stored in the given generation (see store for the other parameters).
+     */
+    static long pack(int generation, int depth, int bound, int value, int move) {
+        return VALID
+                | ((long) generation << 49)
+                | ((long) (move + 1) << 42)
+                | ((long) bound << 40)
+                | ((long) depth << 32)
+                | (value & 0xffffffffL);
+    }
+
+    public static int value(long entry) {
+        return (int) entry;
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> 32) & 0xff;
+    }
+
+    public static int bound(long entry) {
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    /**
+     * @return The square of the best move stored, -1 if there is none.
+     */
+    public static int move(long entry) {
+        return ((int) (entry >>> 42) & 0x7f) - 1;
+    }
+
+    static int generation(long entry) {
+        return (int) (entry >>> 49) & 0xff;
+    }
+}
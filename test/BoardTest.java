@@ -0,0 +1,266 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the legal moves and the heuristic function of Board, which are kept up to date incrementally, against
+ * values worked out by hand for a few positions, and against a reference written here without the masks, the square
+ * weights or the move generator of the engine. Random games (mixing makeMove, playMove and undoMove, copies and
+ * passes) are checked against the reference at every position, as well as against the symmetries of the position
+ * (see Symmetry) and a PositionBatch of the positions of the game. <br>
+ * The expected values are those of the default weights of EvaluationWeights, which the build does not change.
+ */
+public class BoardTest
+{
+    /* what a white disk adds to the heuristic function with the default weights, by the kind of square it is on (a
+     * black disk takes the same away). Every square but the corners counts as dangerous (see Board.indexIsDangerous):
+     * a corner is worth 200 + 10 for the disk, a square on an edge 60 - 85 + 10, and any other square -85 + 10. */
+    private static final int CORNER_VALUE = 210;
+    private static final int EDGE_VALUE = -15;
+    private static final int INNER_VALUE = -75;
+    private static final int PASS_VALUE = 3000;
+    private static final int WIN_VALUE = 10000;
+
+    private static final long SEED = 9723006544314L;
+
+    private static final int[][] DIRECTIONS = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
+
+    @Test
+    public void theStartPositionIsLevel() {
+        Board board = new Board();
+        assertEquals(squares("D3", "C4", "F5", "E6"), board.legalMoves(Board.BLACK));
+        assertEquals(squares("E3", "F4", "C5", "D6"), board.legalMoves(Board.WHITE));
+        assertEquals(0, board.evaluate());
+    }
+
+    @Test
+    public void evaluationsWorkedOutByHand() {
+        // black D5 E4 E5 F5 on inner squares, white D4: -75 + 4 * 75
+        assertEquals(225, Board.fromMoveList("F5").evaluate());
+
+        /* white H8 in the corner and D4 E5 F6 G7 inside: 210 - 4 * 75. Black G8 on the edge and D5 E4 E6 G6 inside:
+         * 15 + 4 * 75. Both can play. */
+        Board corner = Board.fromMoveList("E6F6G6G7G8H8");
+        assertEquals(squares("H8"), corner.getDisks(Board.WHITE) & squares("A1", "H1", "A8", "H8"));
+        assertEquals(-90 + 315, corner.evaluate());
+
+        /* white H4 H5 H6 on the edge and G5 inside: -3 * 15 - 75. Black D3 D4 D5 E4 E5 F5 F6 F7, all inside:
+         * 8 * 75. Black has no move and white has, which is worth the pass to white. */
+        Board pass = Board.fromMoveList("F5F6D3G5H5H4F7H6");
+        assertEquals(0, pass.legalMoves(Board.BLACK));
+        assertEquals(-120 + 600 + PASS_VALUE, pass.evaluate());
+
+        // black takes every white disk: a finished game, which black wins
+        assertEquals(-WIN_VALUE, Board.fromMoveList("E6F4E3F6G5D6E7F5C5").evaluate());
+    }
+
+    @Test
+    public void everySquareIsWeightedByItsKind() {
+        for (int square = 0; square < 64; ++square) {
+            assertEquals(squareValue(square), Board.positionalScore(1L << square, 0), "square " + square);
+            assertEquals(-squareValue(square), Board.positionalScore(0, 1L << square), "square " + square);
+        }
+    }
+
+    @Test
+    public void theDangerTermIsTheCornerTermLessThePieceTerm() {
+        // which is why EvaluationTuner cannot fit the DANGER weight apart from the CORNER and PIECE ones
+        int[] features = new int[EvaluationWeights.COUNT];
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < 1000; ++i) {
+            long white = random.nextLong();
+            long black = random.nextLong() & ~white;
+            Board.positionalFeatures(white, black, features);
+            assertEquals(features[EvaluationWeights.CORNER] - features[EvaluationWeights.PIECE],
+                    features[EvaluationWeights.DANGER]);
+        }
+    }
+
+    @Test
+    public void randomGamesMatchTheReference() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        PositionBatch batch = new PositionBatch(64);
+        List<Board> batched = new ArrayList<>();
+        for (int game = 0; game < 300; ++game) {
+            Board board = new Board();
+            batch.clear();
+            batched.clear();
+            while (!board.isTerminal()) {
+                batch.add(board);
+                batched.add(new Board(board));
+                checkEvaluation(board, "game " + game);
+                checkSymmetry(board, "game " + game);
+
+                int colour = board.getPlayerToMove();
+                long moves = board.legalMoves(colour);
+                for (int skip = random.nextInt(Long.bitCount(moves)); skip > 0; --skip) {
+                    moves &= moves - 1;
+                }
+                int square = Long.numberOfTrailingZeros(moves);
+
+                switch (random.nextInt(4)) {
+                    case 0 -> board.makeMove(square / 8, square % 8, colour);
+                    case 1 -> {
+                        board = new Board(board);
+                        board.makeMove(square / 8, square % 8, colour);
+                    }
+                    default -> {
+                        board.playMove(square, colour);
+                        // now and then the move is taken back and checked again, then made for real
+                        if (random.nextInt(4) == 0) {
+                            board.undoMove();
+                            checkEvaluation(board, "game " + game + " after undoMove");
+                            board.playMove(square, colour);
+                        }
+                    }
+                }
+            }
+            checkEvaluation(board, "final position of game " + game);
+            batch.add(board);
+            batched.add(board);
+            checkBatch(batch, batched, "game " + game);
+        }
+    }
+
+    /**
+     * Checks the legal moves and the heuristic function of the board, as kept up to date and cached, against those of
+     * the reference and those worked out from scratch by the board.
+     */
+    private static void checkEvaluation(Board board, String position) {
+        long white = board.getDisks(Board.WHITE);
+        long black = board.getDisks(Board.BLACK);
+        assertEquals(referenceMoves(white, black), board.legalMoves(Board.WHITE), position);
+        assertEquals(referenceMoves(black, white), board.legalMoves(Board.BLACK), position);
+
+        int evaluation = referenceEvaluation(white, black);
+        assertEquals(evaluation, board.evaluate(), position);
+        // evaluating a second time exercises the cached legal moves
+        assertEquals(evaluation, board.evaluate(), position);
+        assertEquals(evaluation, board.evaluateFromScratch(), position);
+        assertEquals(evaluation, new Board(board).evaluate(), position);
+        assertEquals(Long.bitCount(white), board.getScore(Board.WHITE), position);
+        assertEquals(Long.bitCount(black), board.getScore(Board.BLACK), position);
+    }
+
+    /**
+     * Checks that the legal moves, disk counts and heuristic function that the batch works out for its positions are
+     * those of the boards they were taken from.
+     */
+    private static void checkBatch(PositionBatch batch, List<Board> boards, String game) {
+        batch.evaluate();
+        for (int i = 0; i < batch.size(); ++i) {
+            Board board = boards.get(i);
+            for (int colour : new int[] {Board.WHITE, Board.BLACK}) {
+                assertEquals(board.legalMoves(colour), batch.getLegalMoves(i, colour), game);
+                assertEquals(board.getScore(colour), batch.getScore(i, colour), game);
+            }
+            assertEquals(board.evaluate(), batch.getEvaluation(i), game);
+        }
+    }
+
+    /**
+     * Checks that every orientation of the position has the same canonical orientation, and that its legal moves are
+     * those of the position, turned the same way and back.
+     */
+    private static void checkSymmetry(Board board, String position) {
+        int colour = board.getPlayerToMove();
+        long player = board.getDisks(colour);
+        long opponent = board.getDisks(-colour);
+        long moves = board.legalMoves(colour);
+        int canonical = Symmetry.canonical(player, opponent);
+        long canonicalPlayer = Symmetry.transform(player, canonical);
+        long canonicalOpponent = Symmetry.transform(opponent, canonical);
+        for (int symmetry = 0; symmetry < Symmetry.COUNT; ++symmetry) {
+            long turnedPlayer = Symmetry.transform(player, symmetry);
+            long turnedOpponent = Symmetry.transform(opponent, symmetry);
+            long turnedMoves = referenceMoves(turnedPlayer, turnedOpponent);
+            assertEquals(moves, Symmetry.inverse(turnedMoves, symmetry), position);
+            assertEquals(player, Symmetry.inverse(turnedPlayer, symmetry), position);
+            for (long squares = moves; squares != 0; squares &= squares - 1) {
+                int square = Long.numberOfTrailingZeros(squares);
+                int turnedSquare = Symmetry.transformSquare(square, symmetry);
+                assertEquals(1L << turnedSquare, turnedMoves & (1L << turnedSquare), position);
+                assertEquals(square, Symmetry.inverseSquare(turnedSquare, symmetry), position);
+            }
+            int turned = Symmetry.canonical(turnedPlayer, turnedOpponent);
+            assertEquals(canonicalPlayer, Symmetry.transform(turnedPlayer, turned), position);
+            assertEquals(canonicalOpponent, Symmetry.transform(turnedOpponent, turned), position);
+        }
+    }
+
+    /**
+     * The heuristic function as the rules of Board.evaluate describe it, square by square.
+     */
+    private static int referenceEvaluation(long white, long black) {
+        int whiteCount = Long.bitCount(white);
+        int blackCount = Long.bitCount(black);
+        boolean whiteCanPlay = referenceMoves(white, black) != 0;
+        boolean blackCanPlay = referenceMoves(black, white) != 0;
+        if (whiteCount == 0 || blackCount == 0 || (!whiteCanPlay && !blackCanPlay)) {
+            return Integer.signum(whiteCount - blackCount) * WIN_VALUE;
+        }
+
+        int evaluation = !blackCanPlay ? PASS_VALUE : !whiteCanPlay ? -PASS_VALUE : 0;
+        for (int square = 0; square < 64; ++square) {
+            if ((white & (1L << square)) != 0) {
+                evaluation += squareValue(square);
+            } else if ((black & (1L << square)) != 0) {
+                evaluation -= squareValue(square);
+            }
+        }
+        return evaluation;
+    }
+
+    private static int squareValue(int square) {
+        boolean rowAtEdge = square / 8 == 0 || square / 8 == 7;
+        boolean colAtEdge = square % 8 == 0 || square % 8 == 7;
+        if (rowAtEdge && colAtEdge) {
+            return CORNER_VALUE;
+        }
+        return rowAtEdge || colAtEdge ? EDGE_VALUE : INNER_VALUE;
+    }
+
+    /**
+     * The legal moves of a player, found by walking from every empty square in each direction.
+     */
+    private static long referenceMoves(long player, long opponent) {
+        long moves = 0;
+        for (int square = 0; square < 64; ++square) {
+            if (((player | opponent) & (1L << square)) != 0) {
+                continue;
+            }
+            for (int[] direction : DIRECTIONS) {
+                int row = square / 8 + direction[0];
+                int col = square % 8 + direction[1];
+                int flanked = 0;
+                while (row >= 0 && row < 8 && col >= 0 && col < 8 && (opponent & (1L << (row * 8 + col))) != 0) {
+                    row += direction[0];
+                    col += direction[1];
+                    ++flanked;
+                }
+                if (flanked > 0 && row >= 0 && row < 8 && col >= 0 && col < 8
+                        && (player & (1L << (row * 8 + col))) != 0) {
+                    moves |= 1L << square;
+                    break;
+                }
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * @return The mask of the squares written as in Move.formattedIndex, e.g. "C5".
+     */
+    private static long squares(String... names) {
+        long mask = 0;
+        for (String name : names) {
+            Move move = Move.readFormattedMove(name);
+            mask |= 1L << Bitboards.square(move.getRow(), move.getCol());
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,126 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the margins and best moves of EndgameSolver against a plain negamax (alpha-beta pruning and nothing else,
+ * on Board) for positions with 10 to 14 empty squares, taken from random games with a fixed seed, including positions
+ * where the player to move has to pass.
+ */
+public class EndgameSolverTest
+{
+    private static final long SEED = 0x5eedL;
+
+    @Test
+    public void solvesRandomPositionsExactly() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        EndgameSolver solver = new EndgameSolver(16);
+        for (int empties = 10; empties <= 14; ++empties) {
+            for (int game = 0; game < 3; ++game) {
+                Board board = playRandomly(random, empties);
+                if (board.isTerminal()) {
+                    continue;
+                }
+                int colour = board.getPlayerToMove();
+                if (board.legalMoves(colour) == 0) {
+                    colour = -colour;
+                }
+                String position = empties + " empties, game " + game;
+
+                int margin = solver.solve(board, colour);
+                assertEquals(negamax(board, colour, -64, 64), margin, position);
+                int square = solver.getBestSquare();
+                assertTrue(square >= 0 && (board.legalMoves(colour) & (1L << square)) != 0, position);
+                board.playMove(square, colour);
+                assertEquals(margin, -negamax(board, -colour, -64, 64), position);
+                board.undoMove();
+            }
+        }
+    }
+
+    @Test
+    public void aPlayerWhoHasToPassHasNoBestMove() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        EndgameSolver solver = new EndgameSolver(16);
+        int found = 0;
+        for (int game = 0; game < 10000 && found < 3; ++game) {
+            Board board = playToRootPass(random);
+            if (board == null) {
+                continue;
+            }
+            ++found;
+            // the last player moves again, as their opponent has to pass
+            int colour = -board.getLastPlayer();
+            int margin = solver.solve(board, colour);
+            assertEquals(negamax(board, colour, -64, 64), margin, "game " + game);
+            assertEquals(-1, solver.getBestSquare(), "game " + game);
+        }
+        assertEquals(3, found);
+    }
+
+    /**
+     * Plays random moves from the start until the given number of empty squares is left, or the game ends.
+     */
+    private static Board playRandomly(SplittableRandom random, int empties) {
+        Board board = new Board();
+        while (!board.isTerminal() && 64 - board.getScore(Board.WHITE) - board.getScore(Board.BLACK) > empties) {
+            int colour = board.getPlayerToMove();
+            board.playMove(randomMove(random, board.legalMoves(colour)), colour);
+        }
+        return board;
+    }
+
+    /**
+     * Plays a random game, and stops at the first position with 10 to 14 empty squares where the player to move has
+     * to pass.
+     * @return The position, or null if the game did not reach one.
+     */
+    private static Board playToRootPass(SplittableRandom random) {
+        Board board = new Board();
+        while (!board.isTerminal()) {
+            int empties = 64 - board.getScore(Board.WHITE) - board.getScore(Board.BLACK);
+            if (empties < 10) {
+                return null;
+            }
+            int colour = board.getPlayerToMove();
+            if (empties <= 14 && colour == board.getLastPlayer()) {
+                return board;
+            }
+            board.playMove(randomMove(random, board.legalMoves(colour)), colour);
+        }
+        return null;
+    }
+
+    private static int randomMove(SplittableRandom random, long moves) {
+        for (int skip = random.nextInt(Long.bitCount(moves)); skip > 0; --skip) {
+            moves &= moves - 1;
+        }
+        return Long.numberOfTrailingZeros(moves);
+    }
+
+    /**
+     * @return The final disk difference for the player to move with best play, found by trying every line.
+     */
+    private static int negamax(Board board, int colour, int alpha, int beta) {
+        long moves = board.legalMoves(colour);
+        if (moves == 0) {
+            if (board.legalMoves(-colour) == 0) {
+                return board.getScore(colour) - board.getScore(-colour);
+            }
+            return -negamax(board, -colour, -beta, -alpha);
+        }
+        for (; moves != 0; moves &= moves - 1) {
+            board.playMove(Long.numberOfTrailingZeros(moves), colour);
+            int score = -negamax(board, -colour, -beta, -alpha);
+            board.undoMove();
+            if (score >= beta) {
+                return score;
+            }
+            alpha = Math.max(alpha, score);
+        }
+        return alpha;
+    }
+}
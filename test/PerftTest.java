@@ -0,0 +1,130 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the counts of Perft against the ones published for Othello, against positions worked out by hand, and
+ * against a count made with the copying move generator of Board (canPlay and getChildren) rather than playMove.
+ */
+public class PerftTest
+{
+    // white ends on the east edge, where black cannot flank it, and has two moves of its own: C5 and E7
+    private static final String BLACK_PASSES = "F5F6D3G5H5H4F7H6";
+
+    // the shortest game there is: black takes every white disk in 9 moves
+    private static final String WIPEOUT = "E6F4E3F6G5D6E7F5C5";
+
+    @Test
+    public void countsFromTheStartPositionMatchTheKnownOnes() {
+        Perft perft = new Perft(1, 0);
+        for (int depth = 0; depth <= 8; ++depth) {
+            Board board = new Board();
+            assertEquals(Perft.KNOWN_COUNTS[depth], perft.count(board, board.getPlayerToMove(), depth),
+                    "depth " + depth);
+        }
+    }
+
+    @Test
+    public void countsWithThreadsAndCacheMatchTheKnownOnesToTheLastDepth() {
+        Perft perft = new Perft(2, 64);
+        try {
+            for (int depth = 0; depth < Perft.KNOWN_COUNTS.length; ++depth) {
+                Board board = new Board();
+                assertEquals(Perft.KNOWN_COUNTS[depth], perft.count(board, board.getPlayerToMove(), depth),
+                        "depth " + depth);
+            }
+        } finally {
+            perft.shutdown();
+        }
+    }
+
+    @Test
+    public void everyOpeningMoveHasThreeReplies() {
+        Perft perft = new Perft(1, 0);
+        for (String move : new String[] {"F5", "E6", "D3", "C4"}) {
+            Board board = Board.fromMoveList(move);
+            assertEquals(Board.WHITE, board.getPlayerToMove());
+            assertEquals(3, perft.count(board, Board.WHITE, 1), move);
+            // the 56 leaves of depth 3 are split evenly between the 4 symmetrical openings
+            assertEquals(14, perft.count(board, Board.WHITE, 2), move);
+        }
+    }
+
+    @Test
+    public void aForcedPassCountsAsAMove() {
+        Board board = Board.fromMoveList(BLACK_PASSES);
+        assertEquals(0, board.legalMoves(Board.BLACK));
+        assertEquals(square("C5") | square("E7"), board.legalMoves(Board.WHITE));
+        assertEquals(Board.WHITE, board.getPlayerToMove());
+
+        Perft perft = new Perft(1, 0);
+        assertEquals(2, perft.count(board, Board.WHITE, 1));
+        // with black to move, the pass is the only move, and white's two moves follow it
+        assertEquals(1, perft.count(board, Board.BLACK, 1));
+        assertEquals(2, perft.count(board, Board.BLACK, 2));
+        assertEquals(perft.count(board, Board.WHITE, 4), perft.count(board, Board.BLACK, 5));
+    }
+
+    @Test
+    public void aFinishedGameIsASingleLeaf() {
+        Board board = Board.fromMoveList(WIPEOUT);
+        assertTrue(board.isTerminal());
+        assertEquals(0, board.getScore(Board.WHITE));
+        assertEquals(13, board.getScore(Board.BLACK));
+
+        Perft perft = new Perft(1, 0);
+        for (int depth = 0; depth <= 4; ++depth) {
+            assertEquals(1, perft.count(board, Board.WHITE, depth));
+            assertEquals(1, perft.count(board, Board.BLACK, depth));
+        }
+    }
+
+    @Test
+    public void countsMatchTheCopyingMoveGenerator() {
+        Perft perft = new Perft(1, 16);
+        for (String moves : new String[] {"", "F5D6C3D3C4", BLACK_PASSES, "F5F6E6F4G5E7F7H5E3D3", WIPEOUT}) {
+            Board board = Board.fromMoveList(moves);
+            int colour = board.getPlayerToMove();
+            for (int depth = 0; depth <= 5; ++depth) {
+                assertEquals(copyingCount(board, colour, depth), perft.count(board, colour, depth),
+                        "\"" + moves + "\" depth " + depth);
+            }
+        }
+    }
+
+    @Test
+    public void countingLeavesTheBoardAsItWas() {
+        Board board = Board.fromMoveList("F5D6C3D3C4");
+        Board before = new Board(board);
+        new Perft(1, 16).count(board, board.getPlayerToMove(), 5);
+        assertEquals(before, board);
+        assertEquals(before.getZobristKey(), board.getZobristKey());
+        assertEquals(before.evaluate(), board.evaluate());
+    }
+
+    /**
+     * Counts the leaves as Perft does, copying a board for every move with Board.getChildren.
+     */
+    private static long copyingCount(Board board, int colour, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        if (!board.canPlay(colour)) {
+            return board.canPlay(-colour) ? copyingCount(board, -colour, depth - 1) : 1;
+        }
+        long leaves = 0;
+        for (Board child : board.getChildren(colour)) {
+            leaves += copyingCount(child, -colour, depth - 1);
+        }
+        return leaves;
+    }
+
+    /**
+     * @return The mask of a square written as in Move.formattedIndex, e.g. "C5".
+     */
+    private static long square(String name) {
+        Move move = Move.readFormattedMove(name);
+        return 1L << Bitboards.square(move.getRow(), move.getCol());
+    }
+}
@@ -0,0 +1,70 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that splitting the search between threads finds the values the search finds on a single thread, for max and
+ * min as well as for the principal variation search, and that the principal variation search keeps ProbCut when it
+ * splits.
+ */
+public class PlayerTest
+{
+    private static final int DEPTH = 6;
+    private static final int THREADS = 4;
+
+    @Test
+    public void splitMinimaxFindsTheSameValues() {
+        for (Board board : Positions.boards(Positions.MIDGAME)) {
+            assertEquals(search(board, false, null, 1).getValue(), search(board, false, null, THREADS).getValue());
+        }
+    }
+
+    @Test
+    public void splitPrincipalVariationSearchFindsTheSameValues() {
+        for (Board board : Positions.boards(Positions.MIDGAME)) {
+            int value = search(board, false, null, 1).getValue();
+            assertEquals(value, search(board, true, null, 1).getValue());
+            assertEquals(value, search(board, true, null, THREADS).getValue());
+        }
+    }
+
+    @Test
+    public void splitPrincipalVariationSearchKeepsProbCut() {
+        // a selective search that cuts every node it can, predicting the deep value to be the shallow one
+        ProbCut probCut = new ProbCut();
+        for (int stage = 0; stage < ProbCut.STAGES; ++stage) {
+            for (int depth = ProbCut.MIN_DEPTH; depth <= DEPTH; ++depth) {
+                probCut.setParameters(stage, depth, 1, 0, 1);
+            }
+        }
+        for (Board board : Positions.boards(Positions.MIDGAME)) {
+            for (int threads : new int[] {1, THREADS}) {
+                SearchStatistics statistics = new SearchStatistics();
+                Player player = newPlayer(board, true, probCut, threads);
+                player.setStatistics(statistics);
+                Move move = player.minimax(board);
+                int square = move.getRow() * 8 + move.getCol();
+                assertTrue((board.legalMoves(board.getPlayerToMove()) & (1L << square)) != 0);
+                assertTrue(statistics.getProbCuts() > 0, threads + " threads");
+            }
+        }
+    }
+
+    /**
+     * Searches the board to DEPTH without a transposition table, whose entries could otherwise depend on the order the
+     * threads store them in.
+     * @return The move chosen.
+     */
+    private static Move search(Board board, boolean principalVariationSearch, ProbCut probCut, int threads) {
+        return newPlayer(board, principalVariationSearch, probCut, threads).minimax(board);
+    }
+
+    private static Player newPlayer(Board board, boolean principalVariationSearch, ProbCut probCut, int threads) {
+        Player player = new Player(DEPTH, board.getPlayerToMove(), null);
+        player.setPrincipalVariationSearch(principalVariationSearch);
+        player.setProbCut(probCut);
+        player.setThreads(threads);
+        return player;
+    }
+}